@@ -25,8 +25,10 @@ export default function App() {
 				faceDetectionClassifications={1}
 				trackingEnabled={true}
 				textRecognizerEnabled={true}
-				onBarCodeRead={({format, rawValue}) => {
-					console.log('barcode event from app.tsx:: ', BarcodeFormatsFromEvent[format] + " " + rawValue);
+				onBarCodeRead={({barcodes}) => {
+					barcodes.forEach(({format, rawValue}) => {
+						console.log('barcode event from app.tsx:: ', BarcodeFormatsFromEvent[format] + " " + rawValue);
+					});
 				}}
 				onFacesDetected={(event) => {
 					console.log('onFacesDetected event from app.tsx:: ', event);
@@ -0,0 +1,52 @@
+package com.rncamerademo.nativemodules.camera;
+
+import com.google.mlkit.vision.common.InputImage;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A scan frame shared by every detector that analyzes it. The detector input is built once and
+ * the backing image stays open until each holder has called {@link #release()}.
+ */
+class AnalysisFrame {
+
+    private final InputImage mInputImage;
+
+    private final long mTimestampNanos;
+
+    private final Runnable mOnRecycle;
+
+    private final AtomicInteger mRefCount = new AtomicInteger(1);
+
+    /**
+     * @param inputImage     The detector input for this frame.
+     * @param timestampNanos Sensor timestamp of the frame.
+     * @param onRecycle      Run once the last reference is released, e.g. to close the image.
+     */
+    AnalysisFrame(InputImage inputImage, long timestampNanos, Runnable onRecycle) {
+        mInputImage = inputImage;
+        mTimestampNanos = timestampNanos;
+        mOnRecycle = onRecycle;
+    }
+
+    InputImage getInputImage() {
+        return mInputImage;
+    }
+
+    /**
+     * Sensor timestamp of the frame in milliseconds, as sent to JS with detection results.
+     */
+    double getTimestampMillis() {
+        return mTimestampNanos / 1000000.0;
+    }
+
+    void retain() {
+        mRefCount.incrementAndGet();
+    }
+
+    void release() {
+        if (mRefCount.decrementAndGet() == 0) {
+            mOnRecycle.run();
+        }
+    }
+}
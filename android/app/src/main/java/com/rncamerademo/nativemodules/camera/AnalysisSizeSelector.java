@@ -0,0 +1,41 @@
+package com.rncamerademo.nativemodules.camera;
+
+import java.util.SortedSet;
+
+/**
+ * Picks the resolution of the scan {@link android.media.ImageReader}, independently of the
+ * preview and picture sizes. Detectors rarely need full HD, and every extra pixel is paid for in
+ * conversion and detection time.
+ */
+class AnalysisSizeSelector {
+
+    private int mMinShortEdge = 0;
+
+    /**
+     * @param minShortEdge Smallest acceptable length of the shorter edge in pixels, {@code 0} to
+     *                     always use the largest available size.
+     */
+    void setMinShortEdge(int minShortEdge) {
+        mMinShortEdge = Math.max(0, minShortEdge);
+    }
+
+    int getMinShortEdge() {
+        return mMinShortEdge;
+    }
+
+    /**
+     * Returns the smallest size of {@code ratio} whose short edge is at least the configured
+     * minimum, or the largest size when none is big enough.
+     */
+    Size select(SizeMap sizes, AspectRatio ratio) {
+        SortedSet<Size> candidates = sizes.sizes(ratio);
+        if (mMinShortEdge > 0) {
+            for (Size size : candidates) {
+                if (Math.min(size.getWidth(), size.getHeight()) >= mMinShortEdge) {
+                    return size;
+                }
+            }
+        }
+        return candidates.last();
+    }
+}
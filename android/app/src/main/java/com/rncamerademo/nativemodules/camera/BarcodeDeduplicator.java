@@ -0,0 +1,71 @@
+package com.rncamerademo.nativemodules.camera;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of recently seen barcodes used to keep a code held in front of the camera from being
+ * sent to JS on every frame.
+ *
+ * A barcode is reported the first time it is seen and again once it has been out of view for
+ * longer than the TTL. A TTL of {@code 0} disables de-duplication.
+ */
+class BarcodeDeduplicator {
+
+    private static final int DEFAULT_MAX_SIZE = 64;
+
+    private long mTtlMillis = 0;
+
+    private int mMaxSize = DEFAULT_MAX_SIZE;
+
+    private long mHits = 0;
+
+    private long mMisses = 0;
+
+    // access ordered, so the eldest entry is the least recently seen barcode
+    private final LinkedHashMap<String, Long> mLastSeen = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > mMaxSize;
+        }
+    };
+
+    synchronized void setTtlMillis(long ttlMillis) {
+        mTtlMillis = Math.max(0, ttlMillis);
+        if (mTtlMillis == 0) {
+            mLastSeen.clear();
+        }
+    }
+
+    synchronized void setMaxSize(int maxSize) {
+        mMaxSize = maxSize > 0 ? maxSize : DEFAULT_MAX_SIZE;
+        while (mLastSeen.size() > mMaxSize) {
+            mLastSeen.remove(mLastSeen.keySet().iterator().next());
+        }
+    }
+
+    /**
+     * Records a sighting and returns whether it should be reported.
+     */
+    synchronized boolean shouldReport(String rawValue, int format, long nowMillis) {
+        if (mTtlMillis == 0) {
+            return true;
+        }
+        String key = format + ":" + rawValue;
+        Long lastSeen = mLastSeen.put(key, nowMillis);
+        if (lastSeen != null && nowMillis - lastSeen < mTtlMillis) {
+            mHits++;
+            return false;
+        }
+        mMisses++;
+        return true;
+    }
+
+    synchronized long getHits() {
+        return mHits;
+    }
+
+    synchronized long getMisses() {
+        return mMisses;
+    }
+}
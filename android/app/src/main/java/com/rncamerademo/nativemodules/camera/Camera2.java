@@ -20,6 +20,7 @@ import android.annotation.TargetApi;
 import android.content.Context;
 import android.graphics.ImageFormat;
 import android.graphics.Rect;
+import android.graphics.SurfaceTexture;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCaptureSession;
 import android.hardware.camera2.CameraCharacteristics;
@@ -31,47 +32,40 @@ import android.hardware.camera2.CaptureRequest;
 import android.hardware.camera2.CaptureResult;
 import android.hardware.camera2.TotalCaptureResult;
 import android.hardware.camera2.params.MeteringRectangle;
-import android.hardware.camera2.params.StreamConfigurationMap;
+import android.hardware.camera2.params.OutputConfiguration;
+import android.hardware.camera2.params.SessionConfiguration;
 import android.media.Image;
 import android.media.ImageReader;
 import androidx.annotation.NonNull;
 
+import android.util.DisplayMetrics;
 import android.util.Log;
 import android.util.SparseIntArray;
 import android.view.Surface;
+import android.os.Build;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.view.View;
 
-import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.ReactContext;
 import com.facebook.react.bridge.ReadableMap;
-
 import com.facebook.react.bridge.WritableMap;
-import com.facebook.react.modules.core.DeviceEventManagerModule;
-import com.google.android.gms.tasks.Task;
-import com.google.mlkit.vision.barcode.Barcode;
-import com.google.mlkit.vision.barcode.BarcodeScanner;
-import com.google.mlkit.vision.barcode.BarcodeScannerOptions;
-import com.google.mlkit.vision.barcode.BarcodeScanning;
-import com.google.mlkit.vision.common.InputImage;
-import com.google.mlkit.vision.face.Face;
-import com.google.mlkit.vision.face.FaceDetection;
-import com.google.mlkit.vision.face.FaceDetector;
-import com.google.mlkit.vision.face.FaceDetectorOptions;
-import com.google.mlkit.vision.text.Text;
-import com.google.mlkit.vision.text.TextRecognition;
-import com.google.mlkit.vision.text.TextRecognizer;
-import com.google.mlkit.vision.text.TextRecognizerOptions;
+import com.rncamerademo.nativemodules.camera.utils.ByteBufferPool;
 import com.rncamerademo.nativemodules.camera.utils.ObjectUtils;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
 import java.util.SortedSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 
 @SuppressWarnings("MissingPermission")
@@ -81,24 +75,14 @@ class Camera2 {
     private static final String TAG = "rncameranativemodule";
     protected final RNCamCallback mCallback;
     protected final TextureViewPreview mPreview;
+    /**
+     * The camera thread. Every camera device, session, capture and image reader callback is
+     * delivered here, and callers must only touch camera state from this thread.
+     */
     protected final Handler mBgHandler;
+    private final Executor mCameraExecutor;
     private static final SparseIntArray INTERNAL_FACINGS = new SparseIntArray();
-    private FaceDetectorOptions faceDetectorOptions = new FaceDetectorOptions.Builder()
-            .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_FAST)
-            .setContourMode(FaceDetectorOptions.CONTOUR_MODE_NONE)
-            .setClassificationMode(FaceDetectorOptions.CLASSIFICATION_MODE_NONE)
-            .setMinFaceSize(0.55f)
-            .build();
-    private FaceDetector mFaceDetector = FaceDetection.getClient(faceDetectorOptions);
-    private BarcodeScannerOptions barcodeScannerOptions = new BarcodeScannerOptions.Builder()
-            .build();
-    private BarcodeScanner mBarcodeScanner = BarcodeScanning.getClient(barcodeScannerOptions);
-    private TextRecognizerOptions textRecognizerOptions = new TextRecognizerOptions.Builder()
-            .build();
-    private TextRecognizer mTextRecognizer = TextRecognition.getClient(textRecognizerOptions);
-    private boolean mShouldRecognizeText = false;
-    private boolean mShouldReadBarcodes = false;
-    private boolean mShouldDetectFaces = false;
+    private final ScanAnalyzer mScanAnalyzer;
 
 
     static {
@@ -116,23 +100,81 @@ class Camera2 {
      */
     private static final int MAX_PREVIEW_HEIGHT = 1080;
 
+    /**
+     * Still captures are copied out of the {@link Image} into pooled buffers so that burst
+     * capture does not allocate a fresh multi-megabyte array per frame.
+     */
+    private static final int PICTURE_BUFFERS_PER_BUCKET = 2;
+
+    private static final long PICTURE_POOL_MAX_BYTES = 64L * 1024 * 1024;
+
+    // upper bound on how long the UI thread blocks for the camera thread
+    private static final long CAMERA_THREAD_WAIT_MS = 2500;
+
+    private final ByteBufferPool mPictureBufferPool =
+            new ByteBufferPool(PICTURE_BUFFERS_PER_BUCKET, PICTURE_POOL_MAX_BYTES);
+
     private final CameraManager mCameraManager;
 
     private final CameraDevice.StateCallback mCameraDeviceCallback
             = new CameraDevice.StateCallback() {
 
         public void onOpened(@NonNull CameraDevice camera) {
+            if (!mStarted || !camera.getId().equals(mCameraId)) {
+                // switched away or stopped while it was opening
+                closeInBackground(camera);
+                return;
+            }
             mCamera = camera;
             startCaptureSession();
         }
 
         public void onDisconnected(@NonNull CameraDevice camera) {
-            mCamera = null;
+            // while switching, the previous device may still report in after a new one took over
+            if (camera == mStandbyCamera) {
+                dropStandbyCamera();
+            } else if (camera == mCamera) {
+                mCamera = null;
+            }
         }
 
         public void onError(@NonNull CameraDevice camera, int error) {
             Log.e(TAG, "onError: " + camera.getId() + " (" + error + ")");
-            mCamera = null;
+            onDisconnected(camera);
+        }
+
+    };
+
+    private final CameraDevice.StateCallback mStandbyCameraCallback
+            = new CameraDevice.StateCallback() {
+
+        public void onOpened(@NonNull CameraDevice camera) {
+            if (!camera.getId().equals(mStandbyCameraId)) {
+                // no longer wanted as a standby
+                closeInBackground(camera);
+                return;
+            }
+            if (mStandbyClaimed) {
+                // switched to while it was still opening
+                mStandbyCameraId = null;
+                mStandbyClaimed = false;
+                mCameraDeviceCallback.onOpened(camera);
+                return;
+            }
+            mStandbyCamera = camera;
+        }
+
+        public void onDisconnected(@NonNull CameraDevice camera) {
+            if (camera.getId().equals(mStandbyCameraId) && mStandbyCamera == null) {
+                mStandbyCameraId = null;
+                mStandbyClaimed = false;
+            }
+            mCameraDeviceCallback.onDisconnected(camera);
+        }
+
+        public void onError(@NonNull CameraDevice camera, int error) {
+            Log.e(TAG, "onError: " + camera.getId() + " (" + error + ")");
+            onDisconnected(camera);
         }
 
     };
@@ -144,21 +186,14 @@ class Camera2 {
             if (mCamera == null) {
                 return;
             }
-            mCameraCaptureSession = session;
-            mInitialCropRegion = mCaptureRequestBuilderForPreview.get(CaptureRequest.SCALER_CROP_REGION);
-            updateAutoFocus();
-            updateFlash();
-            updateFocusDepth();
-            updateWhiteBalance();
-            updateZoom();
-            try {
-                mCameraCaptureSession.setRepeatingRequest(mCaptureRequestBuilderForPreview.build(),
-                        mPictureCaptureCallback, null);
-            } catch (CameraAccessException e) {
-                Log.e(TAG, "Failed to start camera preview because it couldn't access camera", e);
-            } catch (IllegalStateException e) {
-                Log.e(TAG, "Failed to start camera preview.", e);
+            if (mDeferredPreviewOutput != null) {
+                // the preview surface did not exist yet, the session goes live once it arrives
+                mDeferredSession = session;
+                attachDeferredPreview();
+                return;
             }
+            mCameraCaptureSession = session;
+            startPreview();
         }
 
         public void onConfigureFailed(@NonNull CameraCaptureSession session) {
@@ -169,17 +204,27 @@ class Camera2 {
             if (mCameraCaptureSession != null && mCameraCaptureSession.equals(session)) {
                 mCameraCaptureSession = null;
             }
+            if (mDeferredSession != null && mDeferredSession.equals(session)) {
+                mDeferredSession = null;
+            }
         }
     };
 
+    // traces of captures not yet sent to the camera, oldest first; the head is the one focusing
+    private final ArrayDeque<CaptureTrace> mPendingTraces = new ArrayDeque<>();
+
+    // traces of still captures sent to the camera, in the order their images will arrive
+    private final ArrayDeque<CaptureTrace> mImageTraces = new ArrayDeque<>();
+
     PictureCaptureCallback mPictureCaptureCallback = new PictureCaptureCallback() {
 
         public void onPrecaptureRequired() {
+            markTrace(mPendingTraces.peek(), CaptureTrace.Stage.FOCUS_LOCK);
             mCaptureRequestBuilderForPreview.set(CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER,
                     CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER_START);
             setState(STATE_PRECAPTURE);
             try {
-                mCameraCaptureSession.capture(mCaptureRequestBuilderForPreview.build(), this, null);
+                mCameraCaptureSession.capture(mCaptureRequestBuilderForPreview.build(), this, mBgHandler);
                 mCaptureRequestBuilderForPreview.set(CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER,
                         CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER_IDLE);
             } catch (CameraAccessException e) {
@@ -188,6 +233,11 @@ class Camera2 {
         }
 
         public void onReady() {
+            CaptureTrace trace = mPendingTraces.peek();
+            if (trace != null) {
+                trace.mark(trace.isMarked(CaptureTrace.Stage.FOCUS_LOCK)
+                        ? CaptureTrace.Stage.PRECAPTURE : CaptureTrace.Stage.FOCUS_LOCK);
+            }
             captureStillPicture();
         }
 
@@ -200,84 +250,41 @@ class Camera2 {
         public void onImageAvailable(ImageReader reader) {
             Image image = reader.acquireNextImage();
             Image.Plane[] planes = image.getPlanes();
-            if (planes.length > 0) {
+            if (planes.length > 0 && image.getFormat() == ImageFormat.JPEG) {
                 ByteBuffer buffer = planes[0].getBuffer();
-                byte[] data = new byte[buffer.remaining()];
-                buffer.get(data);
-                if (image.getFormat() == ImageFormat.JPEG) {
-                    // @TODO: implement deviceOrientation
-                    mCallback.onPictureTaken(data, 0, 0);
-                }
-            }
-            if (mShouldDetectFaces) {
-                detectFaces(image);
-            }
-            if (mShouldReadBarcodes) {
-                detectBarcodes(image);
-            }
-            if (mShouldRecognizeText) {
-                detectText(image);
+                markTrace(mImageTraces.poll(), CaptureTrace.Stage.IMAGE_AVAILABLE);
+                ByteBuffer data = mPictureBufferPool.acquire(buffer.remaining());
+                data.put(buffer);
+                data.flip();
+                // @TODO: implement deviceOrientation
+                mCallback.onPictureTaken(data, 0, 0);
             }
             image.close();
         }
 
     };
 
-    private void detectFaces(android.media.Image image) {
-        InputImage inputImage = InputImage.fromMediaImage(image, 90);
-        Task<List<Face>> detectFacetask = mFaceDetector.process(inputImage);
-        detectFacetask.addOnSuccessListener(faces -> {
-            faces.forEach(face -> {
-                Rect rect = face.getBoundingBox();
-                WritableMap faceDetectionEventData = Arguments.createMap();
-                faceDetectionEventData.putInt("width", rect.width());
-                faceDetectionEventData.putInt("height", rect.height());
-                faceDetectionEventData.putInt("centerX", rect.centerX());
-                faceDetectionEventData.putInt("centerY", rect.centerY());
-                faceDetectionEventData.putInt("top", rect.top);
-                faceDetectionEventData.putInt("left", rect.left);
-                mReactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
-                        .emit("onFacesDetected", faceDetectionEventData);
-            });
-        });
-    }
-
-    private void detectBarcodes(android.media.Image image) {
-        InputImage inputImage = InputImage.fromMediaImage(image, 90);
-        Task<List<Barcode>> detectBarcodeTask = mBarcodeScanner.process(inputImage);
-        detectBarcodeTask.addOnSuccessListener(barcodes -> {
-            barcodes.forEach(barcode -> {
-                WritableMap barcodeEventData = Arguments.createMap();
-                barcodeEventData.putString("rawValue", barcode.getRawValue());
-                barcodeEventData.putInt("format", barcode.getFormat());
-                mReactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
-                        .emit("onBarCodeRead", barcodeEventData);
-            });
-        });
-    }
-
-    private void detectText(android.media.Image image) {
-        InputImage inputImage = InputImage.fromMediaImage(image, 90);
-        Task<Text> detectTextTask = mTextRecognizer.process(inputImage);
-        detectTextTask.addOnSuccessListener(text -> {
-            if(!text.getText().isEmpty()) {
-                WritableMap textDetectedEventData = Arguments.createMap();
-                textDetectedEventData.putString("textDetected", text.getText());
-                mReactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
-                        .emit("onTextRecognized", textDetectedEventData);
-            }
-        });
-    }
-
     private String mCameraId;
     private String _mCameraId = "";
 
-    private CameraCharacteristics mCameraCharacteristics;
+    private CameraCapabilities mCapabilities;
 
-    CameraDevice mCamera;
+    private final CameraCapabilitiesCache mCapabilitiesCache;
+
+    volatile CameraDevice mCamera;
 
     CameraCaptureSession mCameraCaptureSession;
 
+    /**
+     * A session configured before the preview surface existed, with its preview output left
+     * deferred. It becomes {@link #mCameraCaptureSession} once the surface is attached.
+     */
+    private CameraCaptureSession mDeferredSession;
+
+    private OutputConfiguration mDeferredPreviewOutput;
+
+    private Size mDeferredPreviewSize;
+
     CaptureRequest.Builder mCaptureRequestBuilderForPreview;
 
     Set<String> mAvailableCameras = new HashSet<>();
@@ -286,6 +293,8 @@ class Camera2 {
 
     private ImageReader mScanImageReader;
 
+    private final AnalysisSizeSelector mAnalysisSizeSelector = new AnalysisSizeSelector();
+
     private int mImageFormat;
 
     private final SizeMap mPreviewSizes = new SizeMap();
@@ -296,7 +305,7 @@ class Camera2 {
 
     private int mFacing;
 
-    private AspectRatio mAspectRatio = Constants.DEFAULT_ASPECT_RATIO;
+    private volatile AspectRatio mAspectRatio = Constants.DEFAULT_ASPECT_RATIO;
 
     private AspectRatio mInitialRatio;
 
@@ -324,12 +333,37 @@ class Camera2 {
 
     private ReactContext mReactContext;
 
+    // between start() and stop(), whether or not the device has finished opening
+    private boolean mStarted;
+
+    private boolean mFastSwitch;
+
+    // the other-facing camera kept open while fast switching is on; the id is set while it opens
+    private String mStandbyCameraId;
+
+    private CameraDevice mStandbyCamera;
+
+    private boolean mStandbyClaimed;
+
+    private Set<Set<String>> mConcurrentCameraIds;
+
+    // closing a device can take a few hundred ms, which a switch should not wait for
+    private final HandlerThread mTeardownThread;
+
+    private final Handler mTeardownHandler;
+
     Camera2(RNCamCallback callback, TextureViewPreview preview, ReactContext context, Handler bgHandler) {
         mReactContext = context;
         mCallback = callback;
         mPreview = preview;
         mBgHandler = bgHandler;
+        mCameraExecutor = mBgHandler::post;
+        mTeardownThread = new HandlerThread("RNCamera-Teardown-Thread");
+        mTeardownThread.start();
+        mTeardownHandler = new Handler(mTeardownThread.getLooper());
+        mScanAnalyzer = new ScanAnalyzer(context);
         mCameraManager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+        mCapabilitiesCache = CameraCapabilitiesCache.getInstance(context);
         mCameraManager.registerAvailabilityCallback(new CameraManager.AvailabilityCallback() {
             public void onCameraAvailable(@NonNull String cameraId) {
                 super.onCameraAvailable(cameraId);
@@ -340,15 +374,17 @@ class Camera2 {
                 super.onCameraUnavailable(cameraId);
                 mAvailableCameras.remove(cameraId);
             }
-        }, null);
+        }, mBgHandler);
         mImageFormat = mIsScanning ? ImageFormat.YUV_420_888 : ImageFormat.JPEG;
         mPreview.setCallback(new TextureViewPreview.Callback() {
             public void onSurfaceChanged() {
-                startCaptureSession();
+                mBgHandler.post(Camera2.this::startCaptureSession);
             }
 
             public void onSurfaceDestroyed() {
-                stop();
+                // the surface is released as soon as this returns, so wait for the session
+                // targeting it to be torn down
+                runOnCameraThreadAndWait(Camera2.this::stop);
             }
         });
     }
@@ -357,6 +393,31 @@ class Camera2 {
         return mPreview.getView();
     }
 
+    private void runOnCameraThreadAndWait(final Runnable action) {
+        if (mBgHandler.getLooper().isCurrentThread()) {
+            action.run();
+            return;
+        }
+        final CountDownLatch done = new CountDownLatch(1);
+        boolean posted = mBgHandler.post(() -> {
+            try {
+                action.run();
+            } finally {
+                done.countDown();
+            }
+        });
+        if (!posted) {
+            return;
+        }
+        try {
+            if (!done.await(CAMERA_THREAD_WAIT_MS, TimeUnit.MILLISECONDS)) {
+                Log.w(TAG, "Timed out waiting for the camera thread.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     boolean start() {
         if (!chooseCameraIdByFacing()) {
             mAspectRatio = mInitialRatio;
@@ -367,15 +428,18 @@ class Camera2 {
         mInitialRatio = null;
         prepareStillImageReader();
         prepareScanImageReader();
+        mStarted = true;
         startOpeningCamera();
         return true;
     }
 
     void stop() {
-        if (mCameraCaptureSession != null) {
-            mCameraCaptureSession.close();
-            mCameraCaptureSession = null;
-        }
+        mStarted = false;
+        mCallback.onPicturesAborted("The camera was stopped before the picture was taken.");
+        mPendingTraces.clear();
+        mImageTraces.clear();
+        dropStandbyCamera();
+        closeCaptureSession();
         if (mCamera != null) {
             mCamera.close();
             mCamera = null;
@@ -391,6 +455,162 @@ class Camera2 {
         }
     }
 
+    /**
+     * Moves to the camera picked by {@link #mFacing}/{@link #_mCameraId}. The old camera is
+     * closed on the teardown thread while the new one opens, or, with fast switching on, kept
+     * open as the standby so switching back only needs a new session.
+     */
+    private void switchCamera() {
+        final String previousCameraId = mCameraId;
+        final CameraDevice previousCamera = mCamera;
+        final CameraCaptureSession previousSession = mCameraCaptureSession != null
+                ? mCameraCaptureSession : mDeferredSession;
+        final ImageReader previousStillImageReader = mStillImageReader;
+        final ImageReader previousScanImageReader = mScanImageReader;
+        mCamera = null;
+        mCameraCaptureSession = null;
+        mDeferredSession = null;
+        mDeferredPreviewOutput = null;
+        mDeferredPreviewSize = null;
+        mStillImageReader = null;
+        mScanImageReader = null;
+
+        // a late image from the old camera must not be matched with a capture on the new one
+        if (previousStillImageReader != null) {
+            previousStillImageReader.setOnImageAvailableListener(null, null);
+        }
+        mCallback.onPicturesAborted("The camera was switched before the picture was taken.");
+        mPendingTraces.clear();
+        mImageTraces.clear();
+
+        mStarted = false;
+        boolean keepAsStandby = false;
+        if (start() && previousCamera != null && mFastSwitch && mStandbyCameraId == null
+                && canOpenConcurrently(previousCameraId, mCameraId)) {
+            mStandbyCameraId = previousCameraId;
+            mStandbyCamera = previousCamera;
+            keepAsStandby = true;
+        }
+
+        final boolean closePreviousCamera = !keepAsStandby;
+        mTeardownHandler.post(() -> {
+            if (previousSession != null) {
+                previousSession.close();
+            }
+            if (closePreviousCamera && previousCamera != null) {
+                previousCamera.close();
+            }
+            if (previousStillImageReader != null) {
+                previousStillImageReader.close();
+            }
+            if (previousScanImageReader != null) {
+                previousScanImageReader.close();
+            }
+        });
+    }
+
+    /**
+     * Keeps the other-facing camera open next to the active one so switching to it skips
+     * opening the device. Only takes effect where the HAL supports having both open at once.
+     */
+    void setFastSwitch(boolean fastSwitch) {
+        if (mFastSwitch == fastSwitch) {
+            return;
+        }
+        mFastSwitch = fastSwitch;
+        if (fastSwitch) {
+            openStandbyCamera();
+        } else {
+            dropStandbyCamera();
+        }
+    }
+
+    private void openStandbyCamera() {
+        if (!mFastSwitch || mCamera == null || mStandbyCameraId != null) {
+            return;
+        }
+        String alternateId = findAlternateCameraId();
+        if (alternateId == null || !canOpenConcurrently(mCameraId, alternateId)) {
+            return;
+        }
+        mStandbyCameraId = alternateId;
+        try {
+            mCameraManager.openCamera(alternateId, mStandbyCameraCallback, mBgHandler);
+        } catch (CameraAccessException | IllegalArgumentException | SecurityException e) {
+            Log.w(TAG, "Failed to open standby camera: " + alternateId, e);
+            mStandbyCameraId = null;
+        }
+    }
+
+    private void dropStandbyCamera() {
+        if (mStandbyCamera != null) {
+            closeInBackground(mStandbyCamera);
+        }
+        // one still opening is closed by mStandbyCameraCallback once it no longer matches
+        mStandbyCamera = null;
+        mStandbyCameraId = null;
+        mStandbyClaimed = false;
+    }
+
+    private void closeInBackground(final CameraDevice camera) {
+        mTeardownHandler.post(camera::close);
+    }
+
+    // the first camera facing the other way from the active one
+    private String findAlternateCameraId() {
+        try {
+            int facing = mCapabilities.mLensFacing;
+            for (String id : mCapabilitiesCache.getCameraIds()) {
+                int alternateFacing = mCapabilitiesCache.get(id).mLensFacing;
+                if (!id.equals(mCameraId) && alternateFacing != -1 && alternateFacing != facing) {
+                    return id;
+                }
+            }
+        } catch (CameraAccessException e) {
+            Log.w(TAG, "Failed to look up the alternate camera", e);
+        }
+        return null;
+    }
+
+    private boolean canOpenConcurrently(String firstCameraId, String secondCameraId) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.R || firstCameraId == null || secondCameraId == null) {
+            return false;
+        }
+        if (mConcurrentCameraIds == null) {
+            try {
+                mConcurrentCameraIds = mCameraManager.getConcurrentCameraIds();
+            } catch (CameraAccessException e) {
+                Log.w(TAG, "Failed to get concurrent camera ids", e);
+                mConcurrentCameraIds = Collections.emptySet();
+            }
+        }
+        for (Set<String> ids : mConcurrentCameraIds) {
+            if (ids.contains(firstCameraId) && ids.contains(secondCameraId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Hands a buffer received through {@link RNCamCallback#onPictureTaken} back to the pool.
+     */
+    void releasePictureBuffer(ByteBuffer data) {
+        mPictureBufferPool.release(data);
+    }
+
+    /**
+     * Releases resources that outlive a single {@link #start()}/{@link #stop()} cycle.
+     */
+    void release() {
+        mScanAnalyzer.release();
+        mTeardownThread.quitSafely();
+    }
+
+    WritableMap getScanStats() {
+        return mScanAnalyzer.getStats();
+    }
+
     boolean isCameraOpened() {
         return mCamera != null;
     }
@@ -400,9 +620,8 @@ class Camera2 {
             return;
         }
         mFacing = facing;
-        if (isCameraOpened()) {
-            stop();
-            start();
+        if (mStarted) {
+            switchCamera();
         }
     }
 
@@ -425,9 +644,8 @@ class Camera2 {
             // Passing null will always yield true
             if(!ObjectUtils.equals(_mCameraId, mCameraId)){
                 // this will call chooseCameraIdByFacing
-                if (isCameraOpened()) {
-                    stop();
-                    start();
+                if (mStarted) {
+                    switchCamera();
                 }
             }
         }
@@ -446,12 +664,10 @@ class Camera2 {
 
             List<Properties> ids = new ArrayList<>();
 
-            String[] cameraIds = mCameraManager.getCameraIdList();
-            for (String id : cameraIds) {
+            for (String id : mCapabilitiesCache.getCameraIds()) {
                 Properties p = new Properties();
 
-                CameraCharacteristics characteristics = mCameraManager.getCameraCharacteristics(id);
-                Integer internal = characteristics.get(CameraCharacteristics.LENS_FACING);
+                int internal = mCapabilitiesCache.get(id).mLensFacing;
 
                 p.put("id", id);
                 p.put("type", String.valueOf(internal == CameraCharacteristics.LENS_FACING_FRONT ? Constants.FACING_FRONT : Constants.FACING_BACK));
@@ -475,9 +691,8 @@ class Camera2 {
             } catch (CameraAccessException e) {
                 e.printStackTrace();
             }
-            mCameraCaptureSession.close();
-            mCameraCaptureSession = null;
         }
+        closeCaptureSession();
         if (mStillImageReader != null) {
             mStillImageReader.close();
         }
@@ -510,9 +725,8 @@ class Camera2 {
         mAspectRatio = ratio;
         prepareStillImageReader();
         prepareScanImageReader();
-        if (mCameraCaptureSession != null) {
-            mCameraCaptureSession.close();
-            mCameraCaptureSession = null;
+        if (hasCaptureSession()) {
+            closeCaptureSession();
             startCaptureSession();
         }
         return true;
@@ -532,7 +746,7 @@ class Camera2 {
             if (mCameraCaptureSession != null) {
                 try {
                     mCameraCaptureSession.setRepeatingRequest(mCaptureRequestBuilderForPreview.build(),
-                            mPictureCaptureCallback, null);
+                            mPictureCaptureCallback, mBgHandler);
                 } catch (CameraAccessException e) {
                     mAutoFocus = !mAutoFocus; // Revert
                 }
@@ -551,7 +765,7 @@ class Camera2 {
             if (mCameraCaptureSession != null) {
                 try {
                     mCameraCaptureSession.setRepeatingRequest(mCaptureRequestBuilderForPreview.build(),
-                            mPictureCaptureCallback, null);
+                            mPictureCaptureCallback, mBgHandler);
                 } catch (CameraAccessException e) {
                     mFlash = saved; // Revert
                 }
@@ -559,13 +773,20 @@ class Camera2 {
         }
     }
 
-    void takePicture(ReadableMap options) {
+    void takePicture(ReadableMap options, @NonNull CaptureTrace trace) {
         mPictureCaptureCallback.setOptions(options);
+        mPendingTraces.add(trace);
 
-        if (mAutoFocus) {
-            lockFocus();
-        } else {
-            captureStillPicture();
+        try {
+            if (mAutoFocus) {
+                lockFocus();
+            } else {
+                captureStillPicture();
+            }
+        } catch (RuntimeException e) {
+            // the caller rejects this capture, keep its trace from being matched to the next one
+            mPendingTraces.remove(trace);
+            throw e;
         }
     }
 
@@ -579,7 +800,7 @@ class Camera2 {
             updateFocusDepth();
             try {
                 mCameraCaptureSession.setRepeatingRequest(mCaptureRequestBuilderForPreview.build(),
-                        mPictureCaptureCallback, null);
+                        mPictureCaptureCallback, mBgHandler);
             } catch (CameraAccessException e) {
                 mFocusDepth = saved;  // Revert
             }
@@ -596,7 +817,7 @@ class Camera2 {
           updateZoom();
           try {
               mCameraCaptureSession.setRepeatingRequest(mCaptureRequestBuilderForPreview.build(),
-                      mPictureCaptureCallback, null);
+                      mPictureCaptureCallback, mBgHandler);
           } catch (CameraAccessException e) {
               mZoom = saved;  // Revert
           }
@@ -613,7 +834,7 @@ class Camera2 {
             updateWhiteBalance();
             try {
                 mCameraCaptureSession.setRepeatingRequest(mCaptureRequestBuilderForPreview.build(),
-                        mPictureCaptureCallback, null);
+                        mPictureCaptureCallback, mBgHandler);
             } catch (CameraAccessException e) {
                 mWhiteBalance = saved;  // Revert
             }
@@ -621,9 +842,7 @@ class Camera2 {
     }
 
     void setScanning(boolean shouldRecognizeText, boolean shouldReadBarcodes, boolean shouldDetectFaces) {
-        mShouldRecognizeText = shouldRecognizeText;
-        mShouldReadBarcodes = shouldReadBarcodes;
-        mShouldDetectFaces = shouldDetectFaces;
+        mScanAnalyzer.setDetectors(shouldRecognizeText, shouldReadBarcodes, shouldDetectFaces);
         boolean shouldScan = shouldRecognizeText || shouldReadBarcodes || shouldDetectFaces;
         if (mIsScanning == shouldScan) {
             return;
@@ -634,47 +853,106 @@ class Camera2 {
         } else {
             mImageFormat = ImageFormat.YUV_420_888;
         }
-        if (mCameraCaptureSession != null) {
-            mCameraCaptureSession.close();
-            mCameraCaptureSession = null;
+        // the scan surface is always part of the session, so toggling scanning only needs to
+        // add or remove it from the repeating request
+        if (mCameraCaptureSession == null || mCaptureRequestBuilderForPreview == null
+                || mScanImageReader == null) {
+            return;
         }
-        startCaptureSession();
+        if (mIsScanning) {
+            mCaptureRequestBuilderForPreview.addTarget(mScanImageReader.getSurface());
+        } else {
+            mCaptureRequestBuilderForPreview.removeTarget(mScanImageReader.getSurface());
+        }
+        try {
+            mCameraCaptureSession.setRepeatingRequest(mCaptureRequestBuilderForPreview.build(),
+                    mPictureCaptureCallback, mBgHandler);
+        } catch (CameraAccessException e) {
+            Log.e(TAG, "Failed to update scanning.", e);
+        } catch (IllegalStateException e) {
+            Log.e(TAG, "Failed to update scanning.", e);
+        }
+    }
+
+    void setFaceDetectorMaxFps(float maxFps) {
+        mScanAnalyzer.setFaceDetectorMaxFps(maxFps);
+    }
+
+    void setBarcodeMaxFps(float maxFps) {
+        mScanAnalyzer.setBarcodeMaxFps(maxFps);
+    }
+
+    void setTextRecognizerMaxFps(float maxFps) {
+        mScanAnalyzer.setTextRecognizerMaxFps(maxFps);
+    }
+
+    void setScanMinShortEdge(int minShortEdge) {
+        if (mAnalysisSizeSelector.getMinShortEdge() == minShortEdge) {
+            return;
+        }
+        mAnalysisSizeSelector.setMinShortEdge(minShortEdge);
+        if (mScanImageReader == null || mPreviewSizes.isEmpty()) {
+            // picked up by the next start()
+            return;
+        }
+        Size analysisSize = mAnalysisSizeSelector.select(mPreviewSizes, mAspectRatio);
+        if (analysisSize.getWidth() == mScanImageReader.getWidth()
+                && analysisSize.getHeight() == mScanImageReader.getHeight()) {
+            return;
+        }
+        prepareScanImageReader();
+        if (hasCaptureSession()) {
+            closeCaptureSession();
+            startCaptureSession();
+        }
+    }
+
+    void setScanAreaOfInterest(ScanAreaOfInterest areaOfInterest) {
+        mScanAnalyzer.setAreaOfInterest(areaOfInterest);
+    }
+
+    void setBarcodeDedupTtl(long ttlMillis) {
+        mScanAnalyzer.setBarcodeDedupTtl(ttlMillis);
+    }
+
+    void setBarcodeDedupMaxSize(int maxSize) {
+        mScanAnalyzer.setBarcodeDedupMaxSize(maxSize);
     }
 
     /**
      * <p>Chooses a camera ID by the specified camera facing ({@link #mFacing}).</p>
-     * <p>This rewrites {@link #mCameraId}, {@link #mCameraCharacteristics}, and optionally
+     * <p>This rewrites {@link #mCameraId}, {@link #mCapabilities}, and optionally
      * {@link #mFacing}.</p>
      */
     private boolean chooseCameraIdByFacing() {
         if(_mCameraId == null || _mCameraId.isEmpty()){
             try {
                 int internalFacing = INTERNAL_FACINGS.get(mFacing);
-                final String[] ids = mCameraManager.getCameraIdList();
-                if (ids.length == 0) { // No camera
+                final List<String> ids = mCapabilitiesCache.getCameraIds();
+                if (ids.isEmpty()) { // No camera
                     Log.e(TAG, "No cameras available.");
                     return false;
                 }
                 for (String id : ids) {
-                    CameraCharacteristics characteristics = mCameraManager.getCameraCharacteristics(id);
+                    CameraCapabilities capabilities = mCapabilitiesCache.get(id);
 
-                    Integer internal = characteristics.get(CameraCharacteristics.LENS_FACING);
-                    if (internal == null) {
+                    int internal = capabilities.mLensFacing;
+                    if (internal == -1) {
                         Log.e(TAG, "Unexpected state: LENS_FACING null");
                         continue;
                     }
                     if (internal == internalFacing) {
                         mCameraId = id;
-                        mCameraCharacteristics = characteristics;
+                        mCapabilities = capabilities;
                         return true;
                     }
                 }
                 // Not found
-                mCameraId = ids[0];
-                mCameraCharacteristics = mCameraManager.getCameraCharacteristics(mCameraId);
+                mCameraId = ids.get(0);
+                mCapabilities = mCapabilitiesCache.get(mCameraId);
 
-                Integer internal = mCameraCharacteristics.get(CameraCharacteristics.LENS_FACING);
-                if (internal == null) {
+                int internal = mCapabilities.mLensFacing;
+                if (internal == -1) {
                     Log.e(TAG, "Unexpected state: LENS_FACING null");
                     return false;
                 }
@@ -696,13 +974,13 @@ class Camera2 {
         else{
 
             try{
-                // need to set the mCameraCharacteristics variable as above and also do the same checks
+                // need to set the mCapabilities variable as above and also do the same checks
                 // for legacy hardware
-                mCameraCharacteristics = mCameraManager.getCameraCharacteristics(_mCameraId);
+                mCapabilities = mCapabilitiesCache.get(_mCameraId);
 
                 // set our facing variable so orientation also works as expected
-                Integer internal = mCameraCharacteristics.get(CameraCharacteristics.LENS_FACING);
-                if (internal == null) {
+                int internal = mCapabilities.mLensFacing;
+                if (internal == -1) {
                     Log.e(TAG, "Unexpected state: LENS_FACING null");
                     return false;
                 }
@@ -724,18 +1002,13 @@ class Camera2 {
     }
 
     /**
-     * <p>Collects some information from {@link #mCameraCharacteristics}.</p>
+     * <p>Collects some information from {@link #mCapabilities}.</p>
      * <p>This rewrites {@link #mPreviewSizes}, {@link #mPictureSizes},
      * {@link #mCameraOrientation}, and optionally, {@link #mAspectRatio}.</p>
      */
     private void collectCameraInfo() {
-        StreamConfigurationMap map = mCameraCharacteristics.get(
-                CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
-        if (map == null) {
-            throw new IllegalStateException("Failed to get configuration map: " + mCameraId);
-        }
         mPreviewSizes.clear();
-        for (android.util.Size size : map.getOutputSizes(mPreview.getOutputClass())) {
+        for (Size size : mCapabilities.getOutputSizes(CameraCapabilities.OUTPUT_SURFACE_TEXTURE)) {
             int width = size.getWidth();
             int height = size.getHeight();
             if (width <= MAX_PREVIEW_WIDTH && height <= MAX_PREVIEW_HEIGHT) {
@@ -743,7 +1016,7 @@ class Camera2 {
             }
         }
         mPictureSizes.clear();
-        collectPictureSizes(mPictureSizes, map);
+        collectPictureSizes(mPictureSizes, mCapabilities);
         if (mPictureSize == null) {
             mPictureSize = mPictureSizes.sizes(mAspectRatio).last();
         }
@@ -757,12 +1030,14 @@ class Camera2 {
             mAspectRatio = mPreviewSizes.ratios().iterator().next();
         }
 
-        mCameraOrientation = mCameraCharacteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+        mCameraOrientation = mCapabilities.mSensorOrientation;
+        mScanAnalyzer.setRotation(mCameraOrientation);
+        mScanAnalyzer.setLensFacing(mCapabilities.mLensFacing);
     }
 
-    protected void collectPictureSizes(SizeMap sizes, StreamConfigurationMap map) {
-        for (android.util.Size size : map.getOutputSizes(mImageFormat)) {
-            mPictureSizes.add(new Size(size.getWidth(), size.getHeight()));
+    protected void collectPictureSizes(SizeMap sizes, CameraCapabilities capabilities) {
+        for (Size size : capabilities.getOutputSizes(mImageFormat)) {
+            mPictureSizes.add(size);
         }
     }
 
@@ -772,17 +1047,17 @@ class Camera2 {
         }
         mStillImageReader = ImageReader.newInstance(mPictureSize.getWidth(), mPictureSize.getHeight(),
                 ImageFormat.JPEG, 1);
-        mStillImageReader.setOnImageAvailableListener(mOnImageAvailableListener, null);
+        mStillImageReader.setOnImageAvailableListener(mOnImageAvailableListener, mBgHandler);
     }
 
     private void prepareScanImageReader() {
         if (mScanImageReader != null) {
             mScanImageReader.close();
         }
-        Size largest = mPreviewSizes.sizes(mAspectRatio).last();
-        mScanImageReader = ImageReader.newInstance(largest.getWidth(), largest.getHeight(),
-                ImageFormat.YUV_420_888, 1);
-        mScanImageReader.setOnImageAvailableListener(mOnImageAvailableListener, null);
+        Size analysisSize = mAnalysisSizeSelector.select(mPreviewSizes, mAspectRatio);
+        mScanImageReader = ImageReader.newInstance(analysisSize.getWidth(), analysisSize.getHeight(),
+                ImageFormat.YUV_420_888, ScanAnalyzer.MAX_IMAGES);
+        mScanImageReader.setOnImageAvailableListener(mScanAnalyzer, mScanAnalyzer.getHandler());
     }
 
     /**
@@ -790,8 +1065,24 @@ class Camera2 {
      * <p>The result will be processed in {@link #mCameraDeviceCallback}.</p>
      */
     private void startOpeningCamera() {
+        if (mCameraId.equals(mStandbyCameraId)) {
+            if (mStandbyCamera != null) {
+                CameraDevice camera = mStandbyCamera;
+                mStandbyCamera = null;
+                mStandbyCameraId = null;
+                mCameraDeviceCallback.onOpened(camera);
+            } else {
+                // still opening, mStandbyCameraCallback hands it over
+                mStandbyClaimed = true;
+            }
+            return;
+        }
+        if (CameraPrewarmer.getInstance().claim(mCameraId, mCameraDeviceCallback, mBgHandler)) {
+            // opened (or opening) ahead of time through CameraModule.prewarm
+            return;
+        }
         try {
-            mCameraManager.openCamera(mCameraId, mCameraDeviceCallback, null);
+            mCameraManager.openCamera(mCameraId, mCameraDeviceCallback, mBgHandler);
         } catch (CameraAccessException e) {
             throw new RuntimeException("Failed to open camera: " + mCameraId, e);
         }
@@ -803,36 +1094,119 @@ class Camera2 {
      * <p>The result will be continuously processed in {@link #mCameraCaptureSessionCallback}.</p>
      */
     void startCaptureSession() {
-        if (!isCameraOpened() || !mPreview.isReady() || mStillImageReader == null || mScanImageReader == null) {
+        if (!isCameraOpened() || mStillImageReader == null || mScanImageReader == null) {
             return;
         }
-        Size previewSize = chooseOptimalSize();
-        mPreview.setBufferSize(previewSize.getWidth(), previewSize.getHeight());
-        Surface surface = getPreviewSurface();
+        if (mDeferredPreviewOutput != null && mPreview.isReady()) {
+            if (chooseOptimalSize().equals(mDeferredPreviewSize)) {
+                attachDeferredPreview();
+                return;
+            }
+            // the surface came out a different size than guessed, configure again for it
+            closeCaptureSession();
+        }
         try {
             mCaptureRequestBuilderForPreview = mCamera.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
-            mCaptureRequestBuilderForPreview.addTarget(surface);
+            mInitialCropRegion = mCaptureRequestBuilderForPreview.get(CaptureRequest.SCALER_CROP_REGION);
+
+            OutputConfiguration previewOutput;
+            if (mPreview.isReady()) {
+                Size previewSize = chooseOptimalSize();
+                mPreview.setBufferSize(previewSize.getWidth(), previewSize.getHeight());
+                Surface surface = getPreviewSurface();
+                previewOutput = new OutputConfiguration(surface);
+                mCaptureRequestBuilderForPreview.addTarget(surface);
+            } else {
+                // the TextureView is not laid out yet; configure for the size it will most
+                // likely get and attach its surface once it is available
+                DisplayMetrics metrics = mReactContext.getResources().getDisplayMetrics();
+                mDeferredPreviewSize = chooseOptimalSize(metrics.widthPixels, metrics.heightPixels);
+                previewOutput = new OutputConfiguration(
+                        new android.util.Size(mDeferredPreviewSize.getWidth(), mDeferredPreviewSize.getHeight()),
+                        SurfaceTexture.class);
+                mDeferredPreviewOutput = previewOutput;
+            }
 
             if (mIsScanning) {
                 mCaptureRequestBuilderForPreview.addTarget(mScanImageReader.getSurface());
             }
-            mCamera.createCaptureSession(Arrays.asList(surface, mStillImageReader.getSurface(),
-                    mScanImageReader.getSurface()), mCameraCaptureSessionCallback, null); //todo refactor deprecated createCaptureSession method
-//            List<OutputConfiguration> outputConfigurations = Arrays.asList(
-//                    new OutputConfiguration(surface),
-//                    new OutputConfiguration(mStillImageReader.getSurface()),
-//                    new OutputConfiguration(mScanImageReader.getSurface()));
-//
-//            mCamera.createCaptureSession(
-//                    new SessionConfiguration(SessionConfiguration.SESSION_REGULAR,
-//                            outputConfigurations,
-//                            runnable -> Log.d(TAG, "running executor"),
-//                            mSessionCallback));
+            updateAutoFocus();
+            updateFlash();
+            updateFocusDepth();
+            updateWhiteBalance();
+            updateZoom();
+
+            SessionConfiguration sessionConfiguration = new SessionConfiguration(
+                    SessionConfiguration.SESSION_REGULAR,
+                    Arrays.asList(previewOutput,
+                            new OutputConfiguration(mStillImageReader.getSurface()),
+                            new OutputConfiguration(mScanImageReader.getSurface())),
+                    mCameraExecutor,
+                    mCameraCaptureSessionCallback);
+            // lets the HAL configure its streams for these settings up front instead of
+            // reconfiguring when the first repeating request arrives
+            sessionConfiguration.setSessionParameters(mCaptureRequestBuilderForPreview.build());
+            mCamera.createCaptureSession(sessionConfiguration);
         } catch (CameraAccessException e) {
             Log.e(TAG, "Failed to start capture session", e);
         }
     }
 
+    /**
+     * Adds the preview surface to a session that was configured without it and starts the
+     * preview. Does nothing until both the session and the surface are ready.
+     */
+    private void attachDeferredPreview() {
+        if (mDeferredSession == null || !mPreview.isReady()) {
+            return;
+        }
+        mPreview.setBufferSize(mDeferredPreviewSize.getWidth(), mDeferredPreviewSize.getHeight());
+        Surface surface = getPreviewSurface();
+        try {
+            mDeferredPreviewOutput.addSurface(surface);
+            mDeferredSession.finalizeOutputConfigurations(Collections.singletonList(mDeferredPreviewOutput));
+        } catch (CameraAccessException | IllegalArgumentException | IllegalStateException e) {
+            Log.e(TAG, "Failed to attach the preview surface.", e);
+            return;
+        }
+        mCaptureRequestBuilderForPreview.addTarget(surface);
+        mCameraCaptureSession = mDeferredSession;
+        mDeferredSession = null;
+        mDeferredPreviewOutput = null;
+        mDeferredPreviewSize = null;
+        startPreview();
+    }
+
+    private void startPreview() {
+        try {
+            mCameraCaptureSession.setRepeatingRequest(mCaptureRequestBuilderForPreview.build(),
+                    mPictureCaptureCallback, mBgHandler);
+            // only now, so opening the standby does not compete with bringing up the preview
+            openStandbyCamera();
+        } catch (CameraAccessException e) {
+            Log.e(TAG, "Failed to start camera preview because it couldn't access camera", e);
+        } catch (IllegalStateException e) {
+            Log.e(TAG, "Failed to start camera preview.", e);
+        }
+    }
+
+    private boolean hasCaptureSession() {
+        return mCameraCaptureSession != null || mDeferredPreviewOutput != null;
+    }
+
+    private void closeCaptureSession() {
+        if (mCameraCaptureSession != null) {
+            mCameraCaptureSession.close();
+            mCameraCaptureSession = null;
+        }
+        if (mDeferredSession != null) {
+            mDeferredSession.close();
+            mDeferredSession = null;
+        }
+        mDeferredPreviewOutput = null;
+        mDeferredPreviewSize = null;
+    }
+
     public Surface getPreviewSurface() {
         if (mPreviewSurface != null) {
             return mPreviewSurface;
@@ -846,9 +1220,11 @@ class Camera2 {
      * @return The picked size for camera preview.
      */
     private Size chooseOptimalSize() {
+        return chooseOptimalSize(mPreview.getWidth(), mPreview.getHeight());
+    }
+
+    private Size chooseOptimalSize(int surfaceWidth, int surfaceHeight) {
         int surfaceLonger, surfaceShorter;
-        final int surfaceWidth = mPreview.getWidth();
-        final int surfaceHeight = mPreview.getHeight();
         if (surfaceWidth < surfaceHeight) {
             surfaceLonger = surfaceHeight;
             surfaceShorter = surfaceWidth;
@@ -873,8 +1249,7 @@ class Camera2 {
      */
     void updateAutoFocus() {
         if (mAutoFocus) {
-            int[] modes = mCameraCharacteristics.get(
-                    CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES);
+            int[] modes = mCapabilities.mAfModes;
             // Auto focus is not supported
             if (modes == null || modes.length == 0 ||
                     (modes.length == 1 && modes[0] == CameraCharacteristics.CONTROL_AF_MODE_OFF)) {
@@ -936,8 +1311,8 @@ class Camera2 {
         if (mAutoFocus) {
           return;
         }
-        Float minimumLens = mCameraCharacteristics.get(CameraCharacteristics.LENS_INFO_MINIMUM_FOCUS_DISTANCE);
-        if (minimumLens == null) {
+        float minimumLens = mCapabilities.mMinimumFocusDistance;
+        if (Float.isNaN(minimumLens)) {
           throw new NullPointerException("Unexpected state: LENS_INFO_MINIMUM_FOCUS_DISTANCE null");
         }
         float value = mFocusDepth * minimumLens;
@@ -948,9 +1323,9 @@ class Camera2 {
      * Updates the internal state of zoom to {@link #mZoom}.
      */
     void updateZoom() {
-        float maxZoom = mCameraCharacteristics.get(CameraCharacteristics.SCALER_AVAILABLE_MAX_DIGITAL_ZOOM);
+        float maxZoom = mCapabilities.mMaxDigitalZoom;
         float scaledZoom = mZoom * (maxZoom - 1.0f) + 1.0f;
-        Rect currentPreview = mCameraCharacteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
+        Rect currentPreview = mCapabilities.mActiveArraySize;
         if (currentPreview != null) {
             int currentWidth = currentPreview.width();
             int currentHeight = currentPreview.height();
@@ -1016,9 +1391,12 @@ class Camera2 {
                 CaptureRequest.CONTROL_AF_TRIGGER_START);
         try {
             mPictureCaptureCallback.setState(PictureCaptureCallback.STATE_LOCKING);
-            mCameraCaptureSession.capture(mCaptureRequestBuilderForPreview.build(), mPictureCaptureCallback, null);
-        } catch (CameraAccessException e) {
+            mCameraCaptureSession.capture(mCaptureRequestBuilderForPreview.build(), mPictureCaptureCallback, mBgHandler);
+        } catch (CameraAccessException | IllegalStateException e) {
             Log.e(TAG, "Failed to lock focus.", e);
+            mPendingTraces.poll();
+            mPictureCaptureCallback.setState(PictureCaptureCallback.STATE_PREVIEW);
+            mCallback.onPictureFailed("Failed to lock focus: " + e.getMessage());
         }
     }
 
@@ -1040,7 +1418,8 @@ class Camera2 {
                 if (request.getTag() == "FOCUS_TAG") {
                     mCaptureRequestBuilderForPreview.set(CaptureRequest.CONTROL_AF_TRIGGER, null);
                     try {
-                        mCameraCaptureSession.setRepeatingRequest(mCaptureRequestBuilderForPreview.build(), null, null);
+                        mCameraCaptureSession.setRepeatingRequest(mCaptureRequestBuilderForPreview.build(), mPictureCaptureCallback,
+                                mBgHandler);
                     } catch (CameraAccessException e) {
                         Log.e(TAG, "Failed to manual focus.", e);
                     }
@@ -1063,7 +1442,7 @@ class Camera2 {
         mCaptureRequestBuilderForPreview.set(CaptureRequest.CONTROL_AF_TRIGGER, CameraMetadata.CONTROL_AF_TRIGGER_CANCEL);
         mCaptureRequestBuilderForPreview.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_OFF);
         try {
-            mCameraCaptureSession.capture(mCaptureRequestBuilderForPreview.build(), captureCallbackHandler, null);
+            mCameraCaptureSession.capture(mCaptureRequestBuilderForPreview.build(), captureCallbackHandler, mBgHandler);
         } catch (CameraAccessException e) {
             Log.e(TAG, "Failed to manual focus.", e);
         }
@@ -1078,18 +1457,18 @@ class Camera2 {
         mCaptureRequestBuilderForPreview.setTag("FOCUS_TAG");
 
         try {
-            mCameraCaptureSession.capture(mCaptureRequestBuilderForPreview.build(), captureCallbackHandler, null);
+            mCameraCaptureSession.capture(mCaptureRequestBuilderForPreview.build(), captureCallbackHandler, mBgHandler);
         } catch (CameraAccessException e) {
             Log.e(TAG, "Failed to manual focus.", e);
         }
     }
 
     private boolean isMeteringAreaAFSupported() {
-        return mCameraCharacteristics.get(CameraCharacteristics.CONTROL_MAX_REGIONS_AF) >= 1;
+        return mCapabilities.mMaxAfRegions >= 1;
     }
 
     private MeteringRectangle calculateFocusArea(float x, float y) {
-        final Rect sensorArraySize = mCameraCharacteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
+        final Rect sensorArraySize = mCapabilities.mActiveArraySize;
 
         // Current iOS spec has a requirement on sensor orientation that doesn't change, spec followed here.
         final int xCoordinate = (int)(y  * (float)sensorArraySize.height());
@@ -1109,14 +1488,13 @@ class Camera2 {
      * Captures a still picture.
      */
     void captureStillPicture() {
+        CaptureTrace trace = mPendingTraces.poll();
         try {
             CaptureRequest.Builder captureRequestBuilder = mCamera.createCaptureRequest(
                     CameraDevice.TEMPLATE_STILL_CAPTURE);
-            if (mIsScanning) {
-                mImageFormat = ImageFormat.JPEG;
-                captureRequestBuilder.removeTarget(mScanImageReader.getSurface());
-            }
             captureRequestBuilder.addTarget(mStillImageReader.getSurface());
+            // overlapping captures each carry their own trace
+            captureRequestBuilder.setTag(trace);
             captureRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE,
                     mCaptureRequestBuilderForPreview.get(CaptureRequest.CONTROL_AF_MODE));
             switch (mFlash) {
@@ -1162,20 +1540,42 @@ class Camera2 {
                         public void onCaptureCompleted(@NonNull CameraCaptureSession session,
                                 @NonNull CaptureRequest request,
                                 @NonNull TotalCaptureResult result) {
+                            markTrace((CaptureTrace) request.getTag(), CaptureTrace.Stage.CAPTURE);
                             if (mPictureCaptureCallback.getOptions().hasKey("pauseAfterCapture")
                               && !mPictureCaptureCallback.getOptions().getBoolean("pauseAfterCapture")) {
                                 unlockFocus();
                             }
                         }
-                    }, null);
-        } catch (CameraAccessException e) {
+
+                        @Override
+                        public void onCaptureFailed(@NonNull CameraCaptureSession session,
+                                @NonNull CaptureRequest request,
+                                @NonNull CaptureFailure failure) {
+                            Log.e(TAG, "Still capture failed: " + failure.getReason());
+                            mImageTraces.remove(request.getTag());
+                            mCallback.onPictureFailed("The camera failed to capture the picture.");
+                            if (session == mCameraCaptureSession) {
+                                unlockFocus();
+                            }
+                        }
+                    }, mBgHandler);
+            if (trace != null) {
+                mImageTraces.add(trace);
+            }
+        } catch (CameraAccessException | IllegalStateException e) {
             Log.e(TAG, "Cannot capture a still picture.", e);
+            mCallback.onPictureFailed("Cannot capture a still picture: " + e.getMessage());
+        }
+    }
+
+    private static void markTrace(CaptureTrace trace, CaptureTrace.Stage stage) {
+        if (trace != null) {
+            trace.mark(stage);
         }
     }
 
     private int getOutputRotation() {
-        @SuppressWarnings("ConstantConditions")
-        int sensorOrientation = mCameraCharacteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+        int sensorOrientation = mCapabilities.mSensorOrientation;
 
         // updated and copied from Camera1
         if (mFacing == Constants.FACING_BACK) {
@@ -1205,19 +1605,16 @@ class Camera2 {
         mCaptureRequestBuilderForPreview.set(CaptureRequest.CONTROL_AF_TRIGGER,
                 CaptureRequest.CONTROL_AF_TRIGGER_CANCEL);
         try {
-            mCameraCaptureSession.capture(mCaptureRequestBuilderForPreview.build(), mPictureCaptureCallback, null);
+            mCameraCaptureSession.capture(mCaptureRequestBuilderForPreview.build(), mPictureCaptureCallback, mBgHandler);
             updateAutoFocus();
             updateFlash();
-            if (mIsScanning) {
-                mImageFormat = ImageFormat.YUV_420_888;
-                startCaptureSession();
-            } else {
-                mCaptureRequestBuilderForPreview.set(CaptureRequest.CONTROL_AF_TRIGGER,
-                        CaptureRequest.CONTROL_AF_TRIGGER_IDLE);
-                mCameraCaptureSession.setRepeatingRequest(mCaptureRequestBuilderForPreview.build(), mPictureCaptureCallback,
-                        null);
-                mPictureCaptureCallback.setState(PictureCaptureCallback.STATE_PREVIEW);
-            }
+            // the preview request still targets the scan surface when scanning, so resuming the
+            // repeating request is enough; no need to rebuild the session
+            mCaptureRequestBuilderForPreview.set(CaptureRequest.CONTROL_AF_TRIGGER,
+                    CaptureRequest.CONTROL_AF_TRIGGER_IDLE);
+            mCameraCaptureSession.setRepeatingRequest(mCaptureRequestBuilderForPreview.build(), mPictureCaptureCallback,
+                    mBgHandler);
+            mPictureCaptureCallback.setState(PictureCaptureCallback.STATE_PREVIEW);
         } catch (CameraAccessException e) {
             Log.e(TAG, "Failed to restart camera preview.", e);
         }
@@ -0,0 +1,199 @@
+package com.rncamerademo.nativemodules.camera;
+
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.SurfaceTexture;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.util.SparseArray;
+
+import androidx.annotation.Nullable;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The subset of a camera's {@link CameraCharacteristics} that {@link Camera2} needs, in a form
+ * that can be written to and read back from {@link CameraCapabilitiesCache}'s file.
+ */
+class CameraCapabilities {
+
+    /** Key of the sizes a {@link SurfaceTexture} preview can use. */
+    static final int OUTPUT_SURFACE_TEXTURE = -1;
+
+    private static final int[] CACHED_OUTPUTS = {
+            OUTPUT_SURFACE_TEXTURE, ImageFormat.JPEG, ImageFormat.YUV_420_888};
+
+    private static final int[] NO_INTS = new int[0];
+
+    /** Bytes in a {@link #writeTo} record with an empty id, no AF modes, crop or outputs. */
+    static final int MIN_RECORD_SIZE = 2 + 4 + 4 + 4 + 4 + 4 + 4 + 1 + 4;
+
+    final String mCameraId;
+    /** {@link CameraCharacteristics#LENS_FACING}, -1 when the HAL does not report it. */
+    final int mLensFacing;
+    final int mSensorOrientation;
+    final int[] mAfModes;
+    final int mMaxAfRegions;
+    final float mMaxDigitalZoom;
+    /** NaN when the HAL does not report it. */
+    final float mMinimumFocusDistance;
+    @Nullable
+    final Rect mActiveArraySize;
+    // output key -> width, height pairs
+    private final SparseArray<int[]> mOutputSizes;
+
+    private CameraCapabilities(String cameraId, int lensFacing, int sensorOrientation, int[] afModes,
+                               int maxAfRegions, float maxDigitalZoom, float minimumFocusDistance,
+                               @Nullable Rect activeArraySize, SparseArray<int[]> outputSizes) {
+        mCameraId = cameraId;
+        mLensFacing = lensFacing;
+        mSensorOrientation = sensorOrientation;
+        mAfModes = afModes;
+        mMaxAfRegions = maxAfRegions;
+        mMaxDigitalZoom = maxDigitalZoom;
+        mMinimumFocusDistance = minimumFocusDistance;
+        mActiveArraySize = activeArraySize;
+        mOutputSizes = outputSizes;
+    }
+
+    static CameraCapabilities from(String cameraId, CameraCharacteristics characteristics) {
+        StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        if (map == null) {
+            throw new IllegalStateException("Failed to get configuration map: " + cameraId);
+        }
+        SparseArray<int[]> outputSizes = new SparseArray<>();
+        for (int output : CACHED_OUTPUTS) {
+            android.util.Size[] sizes = output == OUTPUT_SURFACE_TEXTURE
+                    ? map.getOutputSizes(SurfaceTexture.class)
+                    : map.getOutputSizes(output);
+            outputSizes.put(output, flatten(sizes));
+        }
+
+        Integer lensFacing = characteristics.get(CameraCharacteristics.LENS_FACING);
+        Integer sensorOrientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+        int[] afModes = characteristics.get(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES);
+        Integer maxAfRegions = characteristics.get(CameraCharacteristics.CONTROL_MAX_REGIONS_AF);
+        Float maxDigitalZoom = characteristics.get(CameraCharacteristics.SCALER_AVAILABLE_MAX_DIGITAL_ZOOM);
+        Float minimumFocusDistance = characteristics.get(CameraCharacteristics.LENS_INFO_MINIMUM_FOCUS_DISTANCE);
+        return new CameraCapabilities(cameraId,
+                lensFacing != null ? lensFacing : -1,
+                sensorOrientation != null ? sensorOrientation : 0,
+                afModes != null ? afModes : NO_INTS,
+                maxAfRegions != null ? maxAfRegions : 0,
+                maxDigitalZoom != null ? maxDigitalZoom : 1f,
+                minimumFocusDistance != null ? minimumFocusDistance : Float.NaN,
+                characteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE),
+                outputSizes);
+    }
+
+    /**
+     * @param output An {@link ImageFormat} or {@link #OUTPUT_SURFACE_TEXTURE}.
+     */
+    Size[] getOutputSizes(int output) {
+        int[] flat = mOutputSizes.get(output, NO_INTS);
+        Size[] sizes = new Size[flat.length / 2];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = new Size(flat[i * 2], flat[i * 2 + 1]);
+        }
+        return sizes;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        writeString(out, mCameraId);
+        out.writeInt(mLensFacing);
+        out.writeInt(mSensorOrientation);
+        writeInts(out, mAfModes);
+        out.writeInt(mMaxAfRegions);
+        out.writeFloat(mMaxDigitalZoom);
+        out.writeFloat(mMinimumFocusDistance);
+        out.writeBoolean(mActiveArraySize != null);
+        if (mActiveArraySize != null) {
+            out.writeInt(mActiveArraySize.left);
+            out.writeInt(mActiveArraySize.top);
+            out.writeInt(mActiveArraySize.right);
+            out.writeInt(mActiveArraySize.bottom);
+        }
+        out.writeInt(mOutputSizes.size());
+        for (int i = 0; i < mOutputSizes.size(); i++) {
+            out.writeInt(mOutputSizes.keyAt(i));
+            writeInts(out, mOutputSizes.valueAt(i));
+        }
+    }
+
+    static CameraCapabilities readFrom(ByteBuffer in) {
+        String cameraId = readString(in);
+        int lensFacing = in.getInt();
+        int sensorOrientation = in.getInt();
+        int[] afModes = readInts(in);
+        int maxAfRegions = in.getInt();
+        float maxDigitalZoom = in.getFloat();
+        float minimumFocusDistance = in.getFloat();
+        Rect activeArraySize = null;
+        if (in.get() != 0) {
+            activeArraySize = new Rect(in.getInt(), in.getInt(), in.getInt(), in.getInt());
+        }
+        int outputCount = readCount(in, 8);
+        SparseArray<int[]> outputSizes = new SparseArray<>(outputCount);
+        for (int i = 0; i < outputCount; i++) {
+            int output = in.getInt();
+            outputSizes.put(output, readInts(in));
+        }
+        return new CameraCapabilities(cameraId, lensFacing, sensorOrientation, afModes, maxAfRegions,
+                maxDigitalZoom, minimumFocusDistance, activeArraySize, outputSizes);
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getShort() & 0xFFFF];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    /**
+     * Reads an element count and checks that many elements of at least {@code minElementSize}
+     * bytes can still follow, so a corrupt count fails like a truncated file does instead of
+     * allocating garbage.
+     */
+    static int readCount(ByteBuffer in, int minElementSize) {
+        int count = in.getInt();
+        if (count < 0 || count > in.remaining() / minElementSize) {
+            throw new BufferUnderflowException();
+        }
+        return count;
+    }
+
+    private static int[] readInts(ByteBuffer in) {
+        int[] values = new int[readCount(in, 4)];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + values.length * 4);
+        return values;
+    }
+
+    private static int[] flatten(@Nullable android.util.Size[] sizes) {
+        if (sizes == null) {
+            return NO_INTS;
+        }
+        int[] flat = new int[sizes.length * 2];
+        for (int i = 0; i < sizes.length; i++) {
+            flat[i * 2] = sizes[i].getWidth();
+            flat[i * 2 + 1] = sizes[i].getHeight();
+        }
+        return flat;
+    }
+}
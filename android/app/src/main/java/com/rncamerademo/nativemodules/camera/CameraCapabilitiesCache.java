@@ -0,0 +1,179 @@
+package com.rncamerademo.nativemodules.camera;
+
+import android.content.Context;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraManager;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps {@link CameraCapabilities} for every camera on disk so starting or switching the camera
+ * does not have to query {@link CameraManager} over binder each time.
+ *
+ * The file is tied to {@link Build#FINGERPRINT}: after an OS or firmware update the HAL may report
+ * different capabilities, so the snapshot is discarded and taken again.
+ *
+ * File layout, big endian:
+ * <pre>
+ * int    magic 'RNCC'
+ * int    format version
+ * string build fingerprint
+ * int    camera count, then per camera (in getCameraIdList() order) a CameraCapabilities record
+ * </pre>
+ * Strings are an unsigned short byte length followed by UTF-8.
+ */
+class CameraCapabilitiesCache {
+
+    private static final String TAG = "rncameranativemodule";
+
+    private static final int MAGIC = 0x524E4343;
+    // bump whenever CameraCapabilities' record layout changes
+    private static final int VERSION = 1;
+
+    private static final String FILE_NAME = "camera_capabilities.bin";
+
+    private static CameraCapabilitiesCache sInstance;
+
+    private final File mFile;
+    private final CameraManager mCameraManager;
+
+    // guarded by this
+    private boolean mLoaded = false;
+    private List<String> mCameraIds;
+    private final Map<String, CameraCapabilities> mCapabilities = new HashMap<>();
+
+    static synchronized CameraCapabilitiesCache getInstance(Context context) {
+        if (sInstance == null) {
+            Context appContext = context.getApplicationContext();
+            // not the cache dir: the capture store purges that, and this rarely changes
+            sInstance = new CameraCapabilitiesCache(new File(appContext.getNoBackupFilesDir(), FILE_NAME),
+                    (CameraManager) appContext.getSystemService(Context.CAMERA_SERVICE));
+        }
+        return sInstance;
+    }
+
+    private CameraCapabilitiesCache(File file, CameraManager cameraManager) {
+        mFile = file;
+        mCameraManager = cameraManager;
+    }
+
+    /**
+     * @return the ids of all cameras, in {@link CameraManager#getCameraIdList()} order.
+     */
+    synchronized List<String> getCameraIds() throws CameraAccessException {
+        ensureLoaded();
+        if (mCameraIds == null) {
+            refresh();
+        }
+        return mCameraIds;
+    }
+
+    synchronized CameraCapabilities get(String cameraId) throws CameraAccessException {
+        ensureLoaded();
+        CameraCapabilities capabilities = mCapabilities.get(cameraId);
+        if (capabilities == null) {
+            // a camera we have not seen, e.g. an external one plugged in since the snapshot
+            refresh();
+            capabilities = mCapabilities.get(cameraId);
+        }
+        if (capabilities == null) {
+            capabilities = CameraCapabilities.from(cameraId, mCameraManager.getCameraCharacteristics(cameraId));
+            mCapabilities.put(cameraId, capabilities);
+        }
+        return capabilities;
+    }
+
+    private void ensureLoaded() {
+        if (mLoaded) {
+            return;
+        }
+        mLoaded = true;
+        if (!mFile.exists()) {
+            return;
+        }
+        try (FileInputStream input = new FileInputStream(mFile)) {
+            FileChannel channel = input.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (!read(buffer)) {
+                Log.d(TAG, "Camera capabilities snapshot is stale, taking a new one");
+                mCameraIds = null;
+                mCapabilities.clear();
+            }
+        } catch (IOException | RuntimeException e) {
+            // truncated or corrupt: drop it, the next lookup queries CameraManager and rewrites it
+            Log.w(TAG, "Could not read camera capabilities snapshot", e);
+            mCameraIds = null;
+            mCapabilities.clear();
+            mFile.delete();
+        }
+    }
+
+    private boolean read(ByteBuffer buffer) {
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                || !Build.FINGERPRINT.equals(CameraCapabilities.readString(buffer))) {
+            return false;
+        }
+        int count = CameraCapabilities.readCount(buffer, CameraCapabilities.MIN_RECORD_SIZE);
+        List<String> cameraIds = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            CameraCapabilities capabilities = CameraCapabilities.readFrom(buffer);
+            cameraIds.add(capabilities.mCameraId);
+            mCapabilities.put(capabilities.mCameraId, capabilities);
+        }
+        mCameraIds = Collections.unmodifiableList(cameraIds);
+        return true;
+    }
+
+    // queries every camera and replaces the snapshot on disk
+    private void refresh() throws CameraAccessException {
+        String[] ids = mCameraManager.getCameraIdList();
+        mCapabilities.clear();
+        for (String id : ids) {
+            mCapabilities.put(id, CameraCapabilities.from(id, mCameraManager.getCameraCharacteristics(id)));
+        }
+        mCameraIds = Collections.unmodifiableList(Arrays.asList(ids));
+        try {
+            write();
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write camera capabilities snapshot", e);
+        }
+    }
+
+    private void write() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        CameraCapabilities.writeString(out, Build.FINGERPRINT);
+        out.writeInt(mCameraIds.size());
+        for (String id : mCameraIds) {
+            mCapabilities.get(id).writeTo(out);
+        }
+        out.flush();
+
+        File tempFile = new File(mFile.getParentFile(), mFile.getName() + ".tmp");
+        try (FileOutputStream output = new FileOutputStream(tempFile)) {
+            bytes.writeTo(output);
+        }
+        if (!tempFile.renameTo(mFile)) {
+            tempFile.delete();
+            throw new IOException("Could not move " + tempFile + " into place");
+        }
+    }
+}
@@ -2,13 +2,14 @@ package com.rncamerademo.nativemodules.camera;
 
 import android.content.pm.PackageManager;
 
+import androidx.annotation.Nullable;
+
 import com.facebook.react.bridge.*;
 import com.facebook.react.uimanager.UIManagerModule;
 
+import com.rncamerademo.nativemodules.camera.utils.CaptureStore;
 import com.rncamerademo.nativemodules.camera.utils.ScopedContext;
 
-import java.io.File;
-
 
 public class CameraModule extends ReactContextBaseJavaModule {
 
@@ -26,14 +27,16 @@ public class CameraModule extends ReactContextBaseJavaModule {
 
   @ReactMethod
   public void takePictureAsync(final ReadableMap options, final Promise promise) {
+    final CaptureTrace trace = new CaptureTrace();
     final ReactApplicationContext context = getReactApplicationContext();
-    final File cacheDirectory = mScopedContext.getCacheDirectory();
+    final CaptureStore captureStore = mScopedContext.getCaptureStore();
     UIManagerModule uiManager = context.getNativeModule(UIManagerModule.class);
     uiManager.addUIBlock(nativeViewHierarchyManager -> {
+        trace.mark(CaptureTrace.Stage.UI_BLOCK);
         RNCameraView cameraView = RNCameraView.getInstance(context);
         try {
             if (cameraView.isCameraOpened()) {
-              cameraView.takePicture(options, promise, cacheDirectory);
+              cameraView.takePicture(options, promise, captureStore, trace);
             } else {
               promise.reject("E_CAMERA_UNAVAILABLE", "Camera is not running");
             }
@@ -44,8 +47,59 @@ public class CameraModule extends ReactContextBaseJavaModule {
     });
   }
 
+  /**
+   * Opens the camera before the camera view mounts. Resolves with the prewarmed camera id, or
+   * null when a camera view already has its camera open.
+   */
+  @ReactMethod
+  public void prewarm(@Nullable final String cameraId, final Promise promise) {
+    if (RNCameraView.hasOpenCamera()) {
+      promise.resolve(null);
+      return;
+    }
+    CameraPrewarmer.getInstance().prewarm(getReactApplicationContext(), cameraId, promise);
+  }
+
+  @ReactMethod
+  public void getPerformanceStats(final Promise promise) {
+    promise.resolve(CaptureLatencyStats.getInstance().getStats());
+  }
+
+  @ReactMethod
+  public void getScanStats(final Promise promise) {
+    final ReactApplicationContext context = getReactApplicationContext();
+    UIManagerModule uiManager = context.getNativeModule(UIManagerModule.class);
+    uiManager.addUIBlock(nativeViewHierarchyManager -> {
+        RNCameraView cameraView = RNCameraView.getInstance(context);
+        promise.resolve(cameraView.getScanStats());
+    });
+  }
+
+  @ReactMethod
+  public void getCaptureStoreStats(final Promise promise) {
+    mScopedContext.getCaptureStore().getStats(promise);
+  }
+
+  @ReactMethod
+  public void configureCaptureStore(final ReadableMap options) {
+    long maxBytes = options.hasKey("maxBytes") ? (long) options.getDouble("maxBytes") : CaptureStore.DEFAULT_MAX_BYTES;
+    long maxAgeMs = options.hasKey("maxAgeMs") ? (long) options.getDouble("maxAgeMs") : CaptureStore.DEFAULT_MAX_AGE_MS;
+    mScopedContext.getCaptureStore().configure(maxBytes, maxAgeMs);
+  }
+
+  @ReactMethod
+  public void purgeCaptureStore(final Promise promise) {
+    mScopedContext.getCaptureStore().purge(promise);
+  }
+
   @ReactMethod
   public void hasTorch(final Promise promise) {
       promise.resolve(getReactApplicationContext().getPackageManager().hasSystemFeature(PackageManager.FEATURE_CAMERA_FLASH));
   }
+
+  @Override
+  public void invalidate() {
+    super.invalidate();
+    mScopedContext.getCaptureStore().release();
+  }
 }
@@ -0,0 +1,229 @@
+package com.rncamerademo.nativemodules.camera;
+
+import android.content.Context;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Promise;
+
+import java.util.List;
+
+/**
+ * Opens a camera device ahead of time, e.g. on launch or when JS knows the camera screen is about
+ * to be shown, so the view does not start from a closed device when it mounts.
+ *
+ * {@link Camera2#start()} claims the prewarmed device for the camera it picked; the camera's
+ * capabilities are loaded into {@link CameraCapabilitiesCache} while the device opens. A device
+ * nobody claims within {@link #UNCLAIMED_TIMEOUT_MS} is closed again so it does not keep the
+ * camera busy for other apps.
+ */
+@SuppressWarnings("MissingPermission")
+class CameraPrewarmer {
+
+    private static final String TAG = "rncameranativemodule";
+
+    static final long UNCLAIMED_TIMEOUT_MS = 5000;
+
+    private static CameraPrewarmer sInstance;
+
+    private final HandlerThread mPrewarmThread;
+    private final Handler mPrewarmHandler;
+
+    // guarded by this
+    private PrewarmedCamera mPending;
+
+    private final Runnable mCloseUnclaimed = this::closeUnclaimed;
+
+    static synchronized CameraPrewarmer getInstance() {
+        if (sInstance == null) {
+            sInstance = new CameraPrewarmer();
+        }
+        return sInstance;
+    }
+
+    private CameraPrewarmer() {
+        mPrewarmThread = new HandlerThread("RNCamera-Prewarm-Thread");
+        mPrewarmThread.start();
+        mPrewarmHandler = new Handler(mPrewarmThread.getLooper());
+    }
+
+    /**
+     * Starts opening {@code cameraId}, or the first back facing camera when it is null, and
+     * resolves with the id once the open is under way.
+     */
+    void prewarm(final Context context, @Nullable final String cameraId, final Promise promise) {
+        mPrewarmHandler.post(() -> {
+            CameraManager manager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+            CameraCapabilitiesCache capabilitiesCache = CameraCapabilitiesCache.getInstance(context);
+            try {
+                String id = cameraId != null ? cameraId : findBackCamera(capabilitiesCache);
+                if (id == null) {
+                    promise.reject("E_PREWARM_FAILED", "No cameras available.");
+                    return;
+                }
+                PrewarmedCamera camera;
+                synchronized (this) {
+                    if (mPending != null && mPending.mCameraId.equals(id)) {
+                        promise.resolve(id);
+                        return;
+                    }
+                    if (mPending != null) {
+                        mPending.close();
+                    }
+                    camera = new PrewarmedCamera(id);
+                    mPending = camera;
+                }
+                manager.openCamera(id, camera, mPrewarmHandler);
+
+                // the HAL opens the device in the meantime
+                capabilitiesCache.get(id);
+                mPrewarmHandler.removeCallbacks(mCloseUnclaimed);
+                mPrewarmHandler.postDelayed(mCloseUnclaimed, UNCLAIMED_TIMEOUT_MS);
+                promise.resolve(id);
+            } catch (CameraAccessException | SecurityException | IllegalArgumentException | IllegalStateException e) {
+                synchronized (this) {
+                    if (mPending != null) {
+                        mPending.close();
+                        mPending = null;
+                    }
+                }
+                promise.reject("E_PREWARM_FAILED", e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Takes over the device prewarmed for {@code cameraId}. From then on its state callbacks,
+     * including {@code onOpened} if it is still opening, are delivered to {@code callback} on
+     * {@code handler}.
+     *
+     * @return false if nothing was prewarmed for {@code cameraId}; the caller opens it itself.
+     */
+    synchronized boolean claim(String cameraId, final CameraDevice.StateCallback callback, final Handler handler) {
+        PrewarmedCamera pending = mPending;
+        if (pending == null || !pending.mCameraId.equals(cameraId)) {
+            return false;
+        }
+        mPending = null;
+        mPrewarmHandler.removeCallbacks(mCloseUnclaimed);
+        pending.mClaimant = callback;
+        pending.mClaimantHandler = handler;
+        if (pending.mCamera != null) {
+            final CameraDevice camera = pending.mCamera;
+            handler.post(() -> callback.onOpened(camera));
+        }
+        return true;
+    }
+
+    private synchronized void closeUnclaimed() {
+        if (mPending != null) {
+            Log.d(TAG, "Closing unclaimed prewarmed camera " + mPending.mCameraId);
+            mPending.close();
+            mPending = null;
+        }
+    }
+
+    @Nullable
+    private static String findBackCamera(CameraCapabilitiesCache capabilitiesCache) throws CameraAccessException {
+        List<String> ids = capabilitiesCache.getCameraIds();
+        for (String id : ids) {
+            if (capabilitiesCache.get(id).mLensFacing == CameraCharacteristics.LENS_FACING_BACK) {
+                return id;
+            }
+        }
+        return ids.isEmpty() ? null : ids.get(0);
+    }
+
+    /**
+     * One prewarmed open. Until claimed it holds on to the device itself; once claimed it
+     * forwards every callback to the claimant.
+     */
+    private class PrewarmedCamera extends CameraDevice.StateCallback {
+
+        final String mCameraId;
+        CameraDevice mCamera;
+        boolean mClosed = false;
+
+        CameraDevice.StateCallback mClaimant;
+        Handler mClaimantHandler;
+
+        PrewarmedCamera(String cameraId) {
+            mCameraId = cameraId;
+        }
+
+        // called with the prewarmer locked
+        void close() {
+            mClosed = true;
+            if (mCamera != null) {
+                mCamera.close();
+                mCamera = null;
+            }
+        }
+
+        @Override
+        public void onOpened(@NonNull final CameraDevice camera) {
+            synchronized (CameraPrewarmer.this) {
+                if (mClaimant == null) {
+                    if (mClosed) {
+                        camera.close();
+                    } else {
+                        mCamera = camera;
+                    }
+                    return;
+                }
+            }
+            mClaimantHandler.post(() -> mClaimant.onOpened(camera));
+        }
+
+        @Override
+        public void onDisconnected(@NonNull final CameraDevice camera) {
+            if (!forward(camera)) {
+                return;
+            }
+            mClaimantHandler.post(() -> mClaimant.onDisconnected(camera));
+        }
+
+        @Override
+        public void onError(@NonNull final CameraDevice camera, final int error) {
+            if (!forward(camera)) {
+                Log.e(TAG, "Prewarmed camera failed: " + camera.getId() + " (" + error + ")");
+                return;
+            }
+            mClaimantHandler.post(() -> mClaimant.onError(camera, error));
+        }
+
+        @Override
+        public void onClosed(@NonNull final CameraDevice camera) {
+            synchronized (CameraPrewarmer.this) {
+                if (mClaimant == null) {
+                    return;
+                }
+            }
+            mClaimantHandler.post(() -> mClaimant.onClosed(camera));
+        }
+
+        // drops an unclaimed camera that went away, returns true if a claimant should hear of it
+        private boolean forward(CameraDevice camera) {
+            synchronized (CameraPrewarmer.this) {
+                if (mClaimant != null) {
+                    return true;
+                }
+                camera.close();
+                mCamera = null;
+                mClosed = true;
+                if (mPending == this) {
+                    mPending = null;
+                }
+                return false;
+            }
+        }
+    }
+}
@@ -43,6 +43,11 @@ public class CameraViewManager extends ViewGroupManager<RNCameraView> {
     view.setCameraId(id);
   }
 
+  @ReactProp(name = "fastCameraSwitch", defaultBoolean = false)
+  public void setFastCameraSwitch(RNCameraView view, boolean fastSwitch) {
+    view.setFastCameraSwitch(fastSwitch);
+  }
+
   @ReactProp(name = "ratio")
   public void setRatio(RNCameraView view, String ratio) {
     view.setAspectRatio(AspectRatio.parse(ratio));
@@ -120,4 +125,47 @@ public class CameraViewManager extends ViewGroupManager<RNCameraView> {
   public void setShouldDetectFaces(RNCameraView view, boolean faceDetectorEnabled) {
     view.setShouldDetectFaces(faceDetectorEnabled);
   }
+
+  @ReactProp(name = "faceDetectorMaxFps", defaultFloat = 0f)
+  public void setFaceDetectorMaxFps(RNCameraView view, float maxFps) {
+    view.setFaceDetectorMaxFps(maxFps);
+  }
+
+  @ReactProp(name = "barcodeMaxFps", defaultFloat = 0f)
+  public void setBarcodeMaxFps(RNCameraView view, float maxFps) {
+    view.setBarcodeMaxFps(maxFps);
+  }
+
+  @ReactProp(name = "textRecognizerMaxFps", defaultFloat = 0f)
+  public void setTextRecognizerMaxFps(RNCameraView view, float maxFps) {
+    view.setTextRecognizerMaxFps(maxFps);
+  }
+
+  @ReactProp(name = "barcodeDedupTtlMs", defaultInt = 0)
+  public void setBarcodeDedupTtl(RNCameraView view, int ttlMillis) {
+    view.setBarcodeDedupTtl(ttlMillis);
+  }
+
+  @ReactProp(name = "barcodeDedupMaxSize", defaultInt = 0)
+  public void setBarcodeDedupMaxSize(RNCameraView view, int maxSize) {
+    view.setBarcodeDedupMaxSize(maxSize);
+  }
+
+  @ReactProp(name = "scanAreaOfInterest")
+  public void setScanAreaOfInterest(RNCameraView view, ReadableMap area) {
+    if(area != null){
+      float x = (float) area.getDouble("x");
+      float y = (float) area.getDouble("y");
+      float width = (float) area.getDouble("width");
+      float height = (float) area.getDouble("height");
+      view.setScanAreaOfInterest(x, y, width, height);
+    } else {
+      view.clearScanAreaOfInterest();
+    }
+  }
+
+  @ReactProp(name = "scanMinShortEdge", defaultInt = 0)
+  public void setScanMinShortEdge(RNCameraView view, int minShortEdge) {
+    view.setScanMinShortEdge(minShortEdge);
+  }
 }
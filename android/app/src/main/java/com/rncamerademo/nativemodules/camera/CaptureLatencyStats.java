@@ -0,0 +1,96 @@
+package com.rncamerademo.nativemodules.camera;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps the per-stage durations of the most recent captures in lock-free ring buffers and
+ * summarizes them as percentiles.
+ */
+class CaptureLatencyStats {
+
+    private static final int CAPACITY = 256; // must be a power of two
+
+    private static final CaptureLatencyStats sInstance = new CaptureLatencyStats();
+
+    private final Ring[] mStageRings = new Ring[CaptureTrace.Stage.values().length];
+
+    private final Ring mTotalRing = new Ring();
+
+    private CaptureLatencyStats() {
+        for (int i = 0; i < mStageRings.length; i++) {
+            mStageRings[i] = new Ring();
+        }
+    }
+
+    static CaptureLatencyStats getInstance() {
+        return sInstance;
+    }
+
+    void record(CaptureTrace trace) {
+        for (CaptureTrace.Stage stage : CaptureTrace.Stage.values()) {
+            long duration = trace.getDurationNanos(stage);
+            if (duration >= 0) {
+                mStageRings[stage.ordinal()].add(duration);
+            }
+        }
+        mTotalRing.add(trace.getTotalNanos());
+    }
+
+    /**
+     * p50/p95/p99 in milliseconds for every stage that was recorded at least once.
+     */
+    WritableMap getStats() {
+        WritableMap stats = Arguments.createMap();
+        for (CaptureTrace.Stage stage : CaptureTrace.Stage.values()) {
+            WritableMap stageStats = mStageRings[stage.ordinal()].summarize();
+            if (stageStats != null) {
+                stats.putMap(stage.key, stageStats);
+            }
+        }
+        WritableMap totalStats = mTotalRing.summarize();
+        if (totalStats != null) {
+            stats.putMap("total", totalStats);
+        }
+        return stats;
+    }
+
+    private static class Ring {
+
+        private final AtomicLongArray mValues = new AtomicLongArray(CAPACITY);
+
+        private final AtomicLong mCount = new AtomicLong();
+
+        void add(long value) {
+            long index = mCount.getAndIncrement();
+            mValues.set((int) (index & (CAPACITY - 1)), value);
+        }
+
+        WritableMap summarize() {
+            int size = (int) Math.min(mCount.get(), CAPACITY);
+            if (size == 0) {
+                return null;
+            }
+            long[] values = new long[size];
+            for (int i = 0; i < size; i++) {
+                values[i] = mValues.get(i);
+            }
+            Arrays.sort(values);
+            WritableMap summary = Arguments.createMap();
+            summary.putInt("count", size);
+            summary.putDouble("p50", percentile(values, 0.50));
+            summary.putDouble("p95", percentile(values, 0.95));
+            summary.putDouble("p99", percentile(values, 0.99));
+            return summary;
+        }
+
+        private static double percentile(long[] sorted, double fraction) {
+            int index = (int) Math.ceil(fraction * sorted.length) - 1;
+            return sorted[Math.max(0, index)] / 1000000.0;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.rncamerademo.nativemodules.camera;
+
+import android.os.SystemClock;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+/**
+ * Monotonic timestamps of one capture as it moves from {@link CameraModule#takePictureAsync}
+ * to promise resolution. Stages that a capture skips (e.g. precapture) are simply not marked.
+ */
+class CaptureTrace {
+
+    enum Stage {
+        /** The UI block queued by takePictureAsync started running. */
+        UI_BLOCK("uiBlock"),
+        /** The capture request reached the camera background thread. */
+        BG_POST("bgPost"),
+        /** Auto-focus locked. */
+        FOCUS_LOCK("focusLock"),
+        /** The auto-exposure precapture sequence finished. */
+        PRECAPTURE("precapture"),
+        /** The still capture request completed. */
+        CAPTURE("capture"),
+        /** The JPEG arrived from the still image reader. */
+        IMAGE_AVAILABLE("imageAvailable"),
+        /** The JPEG was decoded, when post-processing needed pixels. */
+        DECODE("decode"),
+        /** Rotation, resizing, mirroring and EXIF gathering finished. */
+        TRANSFORM("transform"),
+        /** The processed image was compressed back to JPEG. */
+        ENCODE("encode"),
+        /** The picture was written to disk. */
+        PERSIST("persist"),
+        /** The promise was resolved. */
+        RESOLVED("resolved");
+
+        final String key;
+
+        Stage(String key) {
+            this.key = key;
+        }
+    }
+
+    private final long mStartNanos = SystemClock.elapsedRealtimeNanos();
+
+    private final long[] mMarks = new long[Stage.values().length];
+
+    void mark(Stage stage) {
+        mMarks[stage.ordinal()] = SystemClock.elapsedRealtimeNanos();
+    }
+
+    boolean isMarked(Stage stage) {
+        return mMarks[stage.ordinal()] != 0;
+    }
+
+    /**
+     * Time spent in {@code stage}, measured from the previous marked stage, or {@code -1} if the
+     * stage was not reached.
+     */
+    long getDurationNanos(Stage stage) {
+        long mark = mMarks[stage.ordinal()];
+        if (mark == 0) {
+            return -1;
+        }
+        long previous = mStartNanos;
+        for (int i = stage.ordinal() - 1; i >= 0; i--) {
+            if (mMarks[i] != 0) {
+                previous = mMarks[i];
+                break;
+            }
+        }
+        return mark - previous;
+    }
+
+    /**
+     * Time from the start of the capture to the last marked stage.
+     */
+    long getTotalNanos() {
+        for (int i = mMarks.length - 1; i >= 0; i--) {
+            if (mMarks[i] != 0) {
+                return mMarks[i] - mStartNanos;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Per-stage durations in milliseconds, as attached to a picture result.
+     */
+    WritableMap toMap() {
+        WritableMap timings = Arguments.createMap();
+        for (Stage stage : Stage.values()) {
+            long duration = getDurationNanos(stage);
+            if (duration >= 0) {
+                timings.putDouble(stage.key, duration / 1000000.0);
+            }
+        }
+        timings.putDouble("total", getTotalNanos() / 1000000.0);
+        return timings;
+    }
+}
@@ -0,0 +1,65 @@
+package com.rncamerademo.nativemodules.camera;
+
+/**
+ * Decides when a detector may run on the next scan frame.
+ *
+ * The interval between two runs is the larger of the configured max-fps period and a multiple of
+ * the detector's recent latency, so an expensive detector backs off on its own instead of
+ * starving the cheaper ones. Not thread safe apart from {@link #setMaxFps(float)}; the analyzer
+ * only calls it from its analysis thread.
+ */
+class DetectorThrottle {
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    /**
+     * Weight of the newest sample in the latency moving average.
+     */
+    private static final double LATENCY_SMOOTHING = 0.2;
+
+    /**
+     * A detector may keep the CPU busy for at most 1 / LATENCY_HEADROOM of the time.
+     */
+    private static final double LATENCY_HEADROOM = 1.5;
+
+    private volatile long mMinIntervalNanos = 0;
+
+    private volatile double mLatencyNanos = 0;
+
+    private long mLastStartNanos = -1;
+
+    /**
+     * @param maxFps Upper bound on how often the detector runs, {@code 0} for no fixed bound.
+     */
+    void setMaxFps(float maxFps) {
+        mMinIntervalNanos = maxFps > 0 ? (long) (NANOS_PER_SECOND / maxFps) : 0;
+    }
+
+    boolean shouldRun(long nowNanos) {
+        if (mLastStartNanos < 0) {
+            return true;
+        }
+        long interval = Math.max(mMinIntervalNanos, (long) (mLatencyNanos * LATENCY_HEADROOM));
+        return nowNanos - mLastStartNanos >= interval;
+    }
+
+    void onStarted(long nowNanos) {
+        mLastStartNanos = nowNanos;
+    }
+
+    void onFinished(long nowNanos) {
+        long latency = nowNanos - mLastStartNanos;
+        if (mLatencyNanos == 0) {
+            mLatencyNanos = latency;
+        } else {
+            mLatencyNanos += LATENCY_SMOOTHING * (latency - mLatencyNanos);
+        }
+    }
+
+    /**
+     * Smoothed latency of the detector, in milliseconds.
+     */
+    double getLatencyMillis() {
+        return mLatencyNanos / 1000000.0;
+    }
+}
@@ -0,0 +1,224 @@
+package com.rncamerademo.nativemodules.camera;
+
+import com.facebook.react.bridge.WritableMap;
+import com.rncamerademo.nativemodules.camera.utils.ByteBufferPool;
+import com.rncamerademo.nativemodules.camera.utils.HelperFunctions;
+import com.rncamerademo.nativemodules.camera.utils.PictureJob;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs picture post-processing off the camera thread as a chain of stages
+ * (decode, transform, encode, persist, respond), each on its own executor, so a burst of
+ * captures overlaps CPU work with disk writes instead of queueing behind one another.
+ *
+ * Backpressure is applied once, on intake: at most {@link #MAX_IN_FLIGHT} pictures are processed
+ * at a time and further ones are rejected, so the stage queues themselves never need to refuse
+ * work and every stage only ever runs on its own threads.
+ */
+class PictureProcessingPipeline {
+
+    private static final String ERROR_TAG = "E_TAKING_PICTURE_FAILED";
+
+    private static final long KEEP_ALIVE_SECONDS = 10;
+
+    // fastMode captures resolve before they are processed, so nothing else stops JS from
+    // queueing pictures faster than they can be written
+    static final int MAX_FAST_MODE_IN_FLIGHT = 8;
+
+    // room for every fastMode capture, which can no longer be refused once it reaches us, plus a
+    // few regular ones
+    static final int MAX_IN_FLIGHT = MAX_FAST_MODE_IN_FLIGHT + 4;
+
+    private final AtomicInteger mFastModeInFlight = new AtomicInteger();
+
+    private final AtomicInteger mInFlight = new AtomicInteger();
+
+    // re-encoded JPEGs for a few captures in flight
+    private final ByteBufferPool mOutputBufferPool = new ByteBufferPool(2, 32 * 1024 * 1024);
+
+    private final ThreadPoolExecutor mDecodeExecutor;
+    private final ThreadPoolExecutor mTransformExecutor;
+    private final ThreadPoolExecutor mEncodeExecutor;
+    private final ThreadPoolExecutor mPersistExecutor;
+    private final ThreadPoolExecutor mRespondExecutor;
+
+    PictureProcessingPipeline() {
+        // decoding and encoding are CPU bound; leave the other half of the cores to the
+        // camera, preview and JS threads
+        int cpuWorkers = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+        mDecodeExecutor = newStageExecutor("Decode", cpuWorkers);
+        mTransformExecutor = newStageExecutor("Transform", cpuWorkers);
+        mEncodeExecutor = newStageExecutor("Encode", cpuWorkers);
+        // pictures can overtake each other in the CPU stages, so files are not guaranteed to land
+        // in capture order; a single writer does keep them from competing for the disk, and
+        // responses go out in the order the files were written
+        mPersistExecutor = newStageExecutor("Persist", 1);
+        mRespondExecutor = newStageExecutor("Respond", 1);
+    }
+
+    /**
+     * Queues a captured picture for processing. The job's promise is always settled and
+     * {@link PictureJob#finish()} always called, whether processing succeeds or not.
+     */
+    void submit(final PictureJob job, final CaptureTrace trace) {
+        if (mInFlight.incrementAndGet() > MAX_IN_FLIGHT) {
+            fail(job, "Too many pictures are being processed.", null);
+            return;
+        }
+        handOff(mDecodeExecutor, job, () -> decode(job, trace));
+    }
+
+    /**
+     * Pool that {@link PictureJob}s submitted here should write their re-encoded output into.
+     */
+    ByteBufferPool getOutputBufferPool() {
+        return mOutputBufferPool;
+    }
+
+    /**
+     * Claims one of the {@link #MAX_FAST_MODE_IN_FLIGHT} slots for a fastMode capture.
+     *
+     * @return false if every slot is taken and the capture should be refused.
+     */
+    boolean tryAcquireFastModeSlot() {
+        while (true) {
+            int inFlight = mFastModeInFlight.get();
+            if (inFlight >= MAX_FAST_MODE_IN_FLIGHT) {
+                return false;
+            }
+            if (mFastModeInFlight.compareAndSet(inFlight, inFlight + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns a slot claimed with {@link #tryAcquireFastModeSlot()}.
+     */
+    void releaseFastModeSlot() {
+        mFastModeInFlight.decrementAndGet();
+    }
+
+    /**
+     * Stops accepting new pictures. Pictures already queued still finish.
+     */
+    void shutdown() {
+        mDecodeExecutor.shutdown();
+        mTransformExecutor.shutdown();
+        mEncodeExecutor.shutdown();
+        mPersistExecutor.shutdown();
+        mRespondExecutor.shutdown();
+    }
+
+    private void decode(PictureJob job, CaptureTrace trace) {
+        if (!runStage(job, () -> HelperFunctions.decodePicture(job))) {
+            return;
+        }
+        trace.mark(CaptureTrace.Stage.DECODE);
+        handOff(mTransformExecutor, job, () -> transform(job, trace));
+    }
+
+    private void transform(PictureJob job, CaptureTrace trace) {
+        if (!runStage(job, () -> HelperFunctions.transformPicture(job))) {
+            return;
+        }
+        trace.mark(CaptureTrace.Stage.TRANSFORM);
+        handOff(mEncodeExecutor, job, () -> encode(job, trace));
+    }
+
+    private void encode(PictureJob job, CaptureTrace trace) {
+        if (!runStage(job, () -> HelperFunctions.encodePicture(job))) {
+            return;
+        }
+        trace.mark(CaptureTrace.Stage.ENCODE);
+        handOff(mPersistExecutor, job, () -> persist(job, trace));
+    }
+
+    private void persist(PictureJob job, CaptureTrace trace) {
+        if (!runStage(job, () -> HelperFunctions.persistPicture(job))) {
+            return;
+        }
+        trace.mark(CaptureTrace.Stage.PERSIST);
+        handOff(mRespondExecutor, job, () -> respond(job, trace));
+    }
+
+    private void respond(PictureJob job, CaptureTrace trace) {
+        try {
+            WritableMap result = HelperFunctions.buildPictureResponse(job);
+            if (job.getOptions().hasKey("includeTimings") && job.getOptions().getBoolean("includeTimings")) {
+                result.putMap("timings", trace.toMap());
+            }
+            job.getPromise().resolve(result);
+            trace.mark(CaptureTrace.Stage.RESOLVED);
+            CaptureLatencyStats.getInstance().record(trace);
+        } catch (Exception e) {
+            job.getPromise().reject(ERROR_TAG, e.getMessage(), e);
+        } finally {
+            finish(job);
+        }
+    }
+
+    private interface Stage {
+        boolean run() throws Exception;
+    }
+
+    /**
+     * Runs one stage, finishing the job if the stage failed. Stages reject the promise themselves
+     * when they return false; unexpected exceptions are rejected here.
+     */
+    private boolean runStage(PictureJob job, Stage stage) {
+        try {
+            if (stage.run()) {
+                return true;
+            }
+            finish(job);
+        } catch (Exception e) {
+            fail(job, e.getMessage(), e);
+        }
+        return false;
+    }
+
+    private void handOff(ThreadPoolExecutor next, PictureJob job, Runnable work) {
+        try {
+            next.execute(work);
+        } catch (RejectedExecutionException e) {
+            // the queues are unbounded, so this only happens once the pipeline is shut down
+            fail(job, "The camera was released while the picture was being processed.", e);
+        }
+    }
+
+    private void fail(PictureJob job, String message, Exception e) {
+        job.getPromise().reject(ERROR_TAG, message, e);
+        finish(job);
+    }
+
+    /**
+     * Finishes the job and frees its in-flight slot. Must run exactly once per submitted job.
+     */
+    private void finish(PictureJob job) {
+        job.finish();
+        mInFlight.decrementAndGet();
+    }
+
+    private static ThreadPoolExecutor newStageExecutor(final String name, int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new ThreadFactory() {
+                    private final AtomicInteger mCount = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        return new Thread(runnable, "RNCamera-" + name + "-Thread-" + mCount.incrementAndGet());
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
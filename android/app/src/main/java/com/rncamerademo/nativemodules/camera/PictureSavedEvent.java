@@ -0,0 +1,51 @@
+package com.rncamerademo.nativemodules.camera;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.PromiseImpl;
+import com.facebook.react.bridge.ReactContext;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+
+/**
+ * Delivers the outcome of a fastMode capture. The JS promise for such a capture resolves as soon
+ * as the picture is taken, so the processing pipeline settles one of these instead and the result
+ * reaches JS as an {@code onPictureSaved} event tagged with the capture id.
+ */
+class PictureSavedEvent {
+
+    static final String EVENT_NAME = "onPictureSaved";
+
+    /**
+     * @return a promise that emits the picture result, or the error it is rejected with.
+     */
+    static Promise newPromise(final ReactContext context, final String captureId) {
+        return new PromiseImpl(
+                args -> {
+                    WritableMap event = Arguments.createMap();
+                    event.putString("captureId", captureId);
+                    if (args.length > 0 && args[0] instanceof ReadableMap) {
+                        event.merge((ReadableMap) args[0]);
+                    }
+                    emit(context, event);
+                },
+                args -> {
+                    WritableMap error = Arguments.createMap();
+                    if (args.length > 0 && args[0] instanceof ReadableMap) {
+                        ReadableMap errorInfo = (ReadableMap) args[0];
+                        error.putString("code", errorInfo.hasKey("code") ? errorInfo.getString("code") : null);
+                        error.putString("message", errorInfo.hasKey("message") ? errorInfo.getString("message") : null);
+                    }
+                    WritableMap event = Arguments.createMap();
+                    event.putString("captureId", captureId);
+                    event.putMap("error", error);
+                    emit(context, event);
+                });
+    }
+
+    private static void emit(ReactContext context, WritableMap event) {
+        context.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                .emit(EVENT_NAME, event);
+    }
+}
@@ -1,7 +1,25 @@
 package com.rncamerademo.nativemodules.camera;
 
+import java.nio.ByteBuffer;
+
 // todo remove after combining Camera2.java and RNCamrewView.java
 public interface RNCamCallback {
 
-    void onPictureTaken(byte[] data, int deviceOrientation, int softwareRotation);
+    /**
+     * Called with a view of the captured JPEG. The buffer is borrowed from the camera's pool and
+     * must be handed back through {@link Camera2#releasePictureBuffer(ByteBuffer)} once consumed.
+     */
+    void onPictureTaken(ByteBuffer data, int deviceOrientation, int softwareRotation);
+
+    /**
+     * Called when the oldest capture requested through {@link Camera2#takePicture} failed and
+     * will not deliver a picture.
+     */
+    void onPictureFailed(String message);
+
+    /**
+     * Called when the camera is stopped or switched, so no capture still in flight will deliver
+     * a picture.
+     */
+    void onPicturesAborted(String message);
 }
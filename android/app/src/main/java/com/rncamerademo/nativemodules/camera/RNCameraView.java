@@ -8,19 +8,19 @@ import androidx.annotation.NonNull;
 
 import android.os.Handler;
 import android.os.HandlerThread;
-import android.util.Log;
 import android.view.View;
 import android.widget.FrameLayout;
 
 import com.facebook.react.bridge.*;
 
-import java.io.File;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import com.rncamerademo.nativemodules.camera.utils.HelperFunctions;
+import com.rncamerademo.nativemodules.camera.utils.CaptureStore;
+import com.rncamerademo.nativemodules.camera.utils.PictureJob;
 
 /**
  * Singleton that manages the Camera2 instance
@@ -69,9 +69,13 @@ public class RNCameraView extends FrameLayout implements LifecycleEventListener
   protected HandlerThread mBgThread;
 
   protected Handler mBgHandler;
+
+  // picture post-processing runs here so the camera thread is free for the next capture
+  private final PictureProcessingPipeline mPictureProcessingPipeline = new PictureProcessingPipeline();
   private Queue<Promise> mPictureTakenPromises = new ConcurrentLinkedQueue<>();
   private Map<Promise, ReadableMap> mPictureTakenOptions = new ConcurrentHashMap<>();
-  private Map<Promise, File> mPictureTakenDirectories = new ConcurrentHashMap<>();
+  private Map<Promise, CaptureStore> mPictureTakenStores = new ConcurrentHashMap<>();
+  private Map<Promise, CaptureTrace> mPictureTakenTraces = new ConcurrentHashMap<>();
 
 
   private boolean mIsPaused = false;
@@ -100,22 +104,50 @@ public class RNCameraView extends FrameLayout implements LifecycleEventListener
 
 
     addCallback(new Callback() {
-      public void onPictureTaken(RNCameraView cameraView, final byte[] data, int deviceOrientation, int softwareRotation) {
+      public void onPictureTaken(RNCameraView cameraView, final ByteBuffer data, int deviceOrientation, int softwareRotation) {
         Promise promise = mPictureTakenPromises.poll();
+        if (promise == null) {
+          // its capture was already rejected as aborted
+          mCamera2.releasePictureBuffer(data);
+          return;
+        }
         ReadableMap options = mPictureTakenOptions.remove(promise);
-        if (options.hasKey("fastMode") && options.getBoolean("fastMode")) {
-            promise.resolve(null);
+        final CaptureStore captureStore = mPictureTakenStores.remove(promise);
+        final CaptureTrace trace = mPictureTakenTraces.remove(promise);
+        if (isFastMode(options)) {
+            // hand JS an id right away; the saved picture follows as an onPictureSaved event
+            String captureId = UUID.randomUUID().toString();
+            WritableMap capture = Arguments.createMap();
+            capture.putString("captureId", captureId);
+            capture.putInt("deviceOrientation", deviceOrientation);
+            capture.putInt("pictureOrientation", options.hasKey("orientation") ? options.getInt("orientation") : deviceOrientation);
+            promise.resolve(capture);
+
+            mPictureProcessingPipeline.submit(
+                new PictureJob(data, PictureSavedEvent.newPromise(mThemedReactContext, captureId), options, captureStore,
+                    deviceOrientation, softwareRotation, mPictureProcessingPipeline.getOutputBufferPool(), () -> {
+                      mCamera2.releasePictureBuffer(data);
+                      mPictureProcessingPipeline.releaseFastModeSlot();
+                    }),
+                trace);
+            return;
         }
-        final File cacheDirectory = mPictureTakenDirectories.remove(promise);
-        WritableMap result = HelperFunctions.takePictureHelper(data, promise, options, cacheDirectory, deviceOrientation, softwareRotation);
-        Log.d("RNCameraView", "deviceOrientation:: " + result.getInt("deviceOrientation"));
-        Log.d("RNCameraView", "pictureOrientation:: " + result.getInt("pictureOrientation"));
-        Log.d("RNCameraView", "uri:: " + result.getString("uri"));
-        Log.d("RNCameraView", "base64:: " + result.getString("base64"));
-        Log.d("RNCameraView", "width:: " + result.getInt("width"));
-        Log.d("RNCameraView", "height:: " + result.getInt("height"));
-        if (result != null) {
-          promise.resolve(result);
+        mPictureProcessingPipeline.submit(
+            new PictureJob(data, promise, options, captureStore, deviceOrientation, softwareRotation,
+                mPictureProcessingPipeline.getOutputBufferPool(), () -> mCamera2.releasePictureBuffer(data)),
+            trace);
+      }
+
+      @Override
+      public void onPictureFailed(RNCameraView cameraView, String message) {
+        rejectPicture(mPictureTakenPromises.peek(), message);
+      }
+
+      @Override
+      public void onPicturesAborted(RNCameraView cameraView, String message) {
+        Promise promise;
+        while ((promise = mPictureTakenPromises.peek()) != null) {
+          rejectPicture(promise, message);
         }
       }
     });
@@ -128,6 +160,14 @@ public class RNCameraView extends FrameLayout implements LifecycleEventListener
     return rnCameraView;
   }
 
+  /**
+   * @return true if a camera view exists and its camera is open, without creating the view.
+   */
+  public static boolean hasOpenCamera() {
+    RNCameraView view = rnCameraView;
+    return view != null && view.isCameraOpened();
+  }
+
   public void addCallback(@NonNull Callback callback) {
     mCallbacks.add(callback);
   }
@@ -174,65 +214,101 @@ public class RNCameraView extends FrameLayout implements LifecycleEventListener
   }
 
   public void setFacing(@Facing int facing) {
-    mCamera2.setFacing(facing);
+    runOnCameraThread(() -> mCamera2.setFacing(facing));
   }
 
   public void setCameraId(String id) {
-    mCamera2.setCameraId(id);
+    runOnCameraThread(() -> mCamera2.setCameraId(id));
+  }
+
+  public void setFastCameraSwitch(boolean fastSwitch) {
+    runOnCameraThread(() -> mCamera2.setFastSwitch(fastSwitch));
   }
 
   public void setAspectRatio(@NonNull AspectRatio ratio) {
-    if (mCamera2.setAspectRatio(ratio)) {
-      requestLayout();
-    }
+    runOnCameraThread(() -> {
+      if (mCamera2.setAspectRatio(ratio)) {
+        post(this::requestLayout);
+      }
+    });
   }
 
   public void setFlash(@Flash int flash) {
-    mCamera2.setFlash(flash);
+    runOnCameraThread(() -> mCamera2.setFlash(flash));
   }
 
   public void setAutoFocus(boolean autoFocus) {
-    mCamera2.setAutoFocus(autoFocus);
+    runOnCameraThread(() -> mCamera2.setAutoFocus(autoFocus));
   }
 
   public void setFocusDepth(float value) {
-    mCamera2.setFocusDepth(value);
+    runOnCameraThread(() -> mCamera2.setFocusDepth(value));
   }
 
   public void setAutoFocusPointOfInterest(float x, float y) {
-    mCamera2.setFocusArea(x, y);
+    runOnCameraThread(() -> mCamera2.setFocusArea(x, y));
   }
 
   public void setZoom(float zoom) {
-    mCamera2.setZoom(zoom);
+    runOnCameraThread(() -> mCamera2.setZoom(zoom));
   }
 
   public void setWhiteBalance(int whiteBalance) {
-    mCamera2.setWhiteBalance(whiteBalance);
+    runOnCameraThread(() -> mCamera2.setWhiteBalance(whiteBalance));
   }
 
   public void setPictureSize(@NonNull Size size) {
-    mCamera2.setPictureSize(size);
+    runOnCameraThread(() -> mCamera2.setPictureSize(size));
+  }
+
+  /**
+   * Camera state is confined to the bg thread; setters called from JS or the UI thread are
+   * queued onto it in order.
+   */
+  private void runOnCameraThread(Runnable action) {
+    mBgHandler.post(action);
   }
 
-  public void takePicture(final ReadableMap options, final Promise promise, final File cacheDirectory) {
+  public void takePicture(final ReadableMap options, final Promise promise, final CaptureStore captureStore, final CaptureTrace trace) {
+    final boolean fastMode = isFastMode(options);
+    if (fastMode && !mPictureProcessingPipeline.tryAcquireFastModeSlot()) {
+      promise.reject("E_CAPTURE_BACKPRESSURE", "Too many fastMode pictures are still being saved.");
+      return;
+    }
     mBgHandler.post(() -> {
+      trace.mark(CaptureTrace.Stage.BG_POST);
       mPictureTakenPromises.add(promise);
       mPictureTakenOptions.put(promise, options);
-      mPictureTakenDirectories.put(promise, cacheDirectory);
+      mPictureTakenStores.put(promise, captureStore);
+      mPictureTakenTraces.put(promise, trace);
 
       try {
-        mCamera2.takePicture(options);
+        mCamera2.takePicture(options, trace);
       } catch (Exception e) {
-        mPictureTakenPromises.remove(promise);
-        mPictureTakenOptions.remove(promise);
-        mPictureTakenDirectories.remove(promise);
-
-        promise.reject("E_TAKE_PICTURE_FAILED", e.getMessage());
+        rejectPicture(promise, e.getMessage());
       }
     });
   }
 
+  // forgets a capture that will never deliver a picture, handing back its fastMode slot
+  private void rejectPicture(Promise promise, String message) {
+    if (promise == null) {
+      return;
+    }
+    mPictureTakenPromises.remove(promise);
+    ReadableMap options = mPictureTakenOptions.remove(promise);
+    mPictureTakenStores.remove(promise);
+    mPictureTakenTraces.remove(promise);
+    if (options != null && isFastMode(options)) {
+      mPictureProcessingPipeline.releaseFastModeSlot();
+    }
+    promise.reject("E_TAKE_PICTURE_FAILED", message);
+  }
+
+  private static boolean isFastMode(ReadableMap options) {
+    return options.hasKey("fastMode") && options.getBoolean("fastMode");
+  }
+
   public void setFaceDetectionLandmarks(int landmarks) {
     // todo move logic to camera2
 //    mFaceDetectionLandmarks = landmarks;
@@ -271,16 +347,58 @@ public class RNCameraView extends FrameLayout implements LifecycleEventListener
    */
 
   public void setShouldRecognizeText(boolean shouldRecognizeText) {
-    this.mShouldRecognizeText = shouldRecognizeText;
-    mCamera2.setScanning(mShouldRecognizeText, mShouldReadBarcodes, mShouldDetectFaces);
+    runOnCameraThread(() -> {
+      this.mShouldRecognizeText = shouldRecognizeText;
+      mCamera2.setScanning(mShouldRecognizeText, mShouldReadBarcodes, mShouldDetectFaces);
+    });
   }
   public void setShouldReadBarcodes(boolean shouldReadBarcodes) {
-    this.mShouldReadBarcodes = shouldReadBarcodes;
-    mCamera2.setScanning(mShouldRecognizeText, mShouldReadBarcodes, mShouldDetectFaces);
+    runOnCameraThread(() -> {
+      this.mShouldReadBarcodes = shouldReadBarcodes;
+      mCamera2.setScanning(mShouldRecognizeText, mShouldReadBarcodes, mShouldDetectFaces);
+    });
   }
   public void setShouldDetectFaces(boolean shouldDetectFaces) {
-    this.mShouldDetectFaces = shouldDetectFaces;
-    mCamera2.setScanning(mShouldRecognizeText, mShouldReadBarcodes, mShouldDetectFaces);
+    runOnCameraThread(() -> {
+      this.mShouldDetectFaces = shouldDetectFaces;
+      mCamera2.setScanning(mShouldRecognizeText, mShouldReadBarcodes, mShouldDetectFaces);
+    });
+  }
+
+  public void setFaceDetectorMaxFps(float maxFps) {
+    runOnCameraThread(() -> mCamera2.setFaceDetectorMaxFps(maxFps));
+  }
+
+  public void setBarcodeMaxFps(float maxFps) {
+    runOnCameraThread(() -> mCamera2.setBarcodeMaxFps(maxFps));
+  }
+
+  public void setTextRecognizerMaxFps(float maxFps) {
+    runOnCameraThread(() -> mCamera2.setTextRecognizerMaxFps(maxFps));
+  }
+
+  public void setScanMinShortEdge(int minShortEdge) {
+    runOnCameraThread(() -> mCamera2.setScanMinShortEdge(minShortEdge));
+  }
+
+  public void setScanAreaOfInterest(float x, float y, float width, float height) {
+    runOnCameraThread(() -> mCamera2.setScanAreaOfInterest(new ScanAreaOfInterest(x, y, width, height)));
+  }
+
+  public void clearScanAreaOfInterest() {
+    runOnCameraThread(() -> mCamera2.setScanAreaOfInterest(null));
+  }
+
+  public void setBarcodeDedupTtl(long ttlMillis) {
+    runOnCameraThread(() -> mCamera2.setBarcodeDedupTtl(ttlMillis));
+  }
+
+  public void setBarcodeDedupMaxSize(int maxSize) {
+    runOnCameraThread(() -> mCamera2.setBarcodeDedupMaxSize(maxSize));
+  }
+
+  public WritableMap getScanStats() {
+    return mCamera2.getScanStats();
   }
 
   /**
@@ -302,10 +420,12 @@ public class RNCameraView extends FrameLayout implements LifecycleEventListener
   }
 
   public void onHostPause() {
-    if (!mIsPaused && isCameraOpened()) {
-      mIsPaused = true;
-      mCamera2.stop();
-    }
+    mBgHandler.post(() -> {
+      if (!mIsPaused && isCameraOpened()) {
+        mIsPaused = true;
+        mCamera2.stop();
+      }
+    });
   }
 
   public void onHostDestroy() {
@@ -321,11 +441,13 @@ public class RNCameraView extends FrameLayout implements LifecycleEventListener
     // and cleanup last once everything has finished
     mBgHandler.post(() -> {
       mCamera2.stop();
+      mCamera2.release();
       cleanup();
     });
   }
 
   public void cleanup(){
+    mPictureProcessingPipeline.shutdown();
     if(mBgThread != null){
       mBgThread.quitSafely();
       mBgThread = null;
@@ -347,11 +469,25 @@ public class RNCameraView extends FrameLayout implements LifecycleEventListener
     }
 
     @Override
-    public void onPictureTaken(byte[] data, int deviceOrientation, int softwareRotation) {
+    public void onPictureTaken(ByteBuffer data, int deviceOrientation, int softwareRotation) {
       for (Callback callback : mCallbacks) {
         callback.onPictureTaken(RNCameraView.this, data, deviceOrientation, softwareRotation);
       }
     }
+
+    @Override
+    public void onPictureFailed(String message) {
+      for (Callback callback : mCallbacks) {
+        callback.onPictureFailed(RNCameraView.this, message);
+      }
+    }
+
+    @Override
+    public void onPicturesAborted(String message) {
+      for (Callback callback : mCallbacks) {
+        callback.onPicturesAborted(RNCameraView.this, message);
+      }
+    }
   }
 
   @NonNull
@@ -368,9 +504,22 @@ public class RNCameraView extends FrameLayout implements LifecycleEventListener
      * Called when a picture is taken.
      *
      * @param cameraView The associated {@link RNCameraView}.
-     * @param data       JPEG data.
+     * @param data       JPEG data, borrowed from the camera's buffer pool. It stays valid
+     *                   until handed back through {@link Camera2#releasePictureBuffer}, which
+     *                   the picture job does once it is done with the bytes.
+     */
+    public void onPictureTaken(RNCameraView cameraView, ByteBuffer data, int deviceOrientation, int softwareRotation) {}
+
+    /**
+     * Called when the oldest pending capture failed without a picture.
+     */
+    public void onPictureFailed(RNCameraView cameraView, String message) {}
+
+    /**
+     * Called when the camera stopped or switched with captures still pending; none of them
+     * will deliver a picture.
      */
-    public void onPictureTaken(RNCameraView cameraView, byte[] data, int deviceOrientation, int softwareRotation) {}
+    public void onPicturesAborted(RNCameraView cameraView, String message) {}
   }
 
 }
@@ -0,0 +1,364 @@
+package com.rncamerademo.nativemodules.camera;
+
+import android.graphics.Rect;
+import android.hardware.camera2.CameraCharacteristics;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReactContext;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+import com.google.android.gms.tasks.Task;
+import com.google.mlkit.vision.barcode.Barcode;
+import com.google.mlkit.vision.barcode.BarcodeScanner;
+import com.google.mlkit.vision.barcode.BarcodeScannerOptions;
+import com.google.mlkit.vision.barcode.BarcodeScanning;
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.face.Face;
+import com.google.mlkit.vision.face.FaceDetection;
+import com.google.mlkit.vision.face.FaceDetector;
+import com.google.mlkit.vision.face.FaceDetectorOptions;
+import com.google.mlkit.vision.text.Text;
+import com.google.mlkit.vision.text.TextRecognition;
+import com.google.mlkit.vision.text.TextRecognizer;
+import com.google.mlkit.vision.text.TextRecognizerOptions;
+import com.rncamerademo.nativemodules.camera.utils.ByteBufferPool;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs ML Kit detection on frames coming from the scan {@link ImageReader}.
+ *
+ * Results are sent to JS as one event per detector and frame, carrying every detected object
+ * along with the frame timestamp, so bridge traffic follows the frame rate rather than the
+ * number of objects in view.
+ *
+ * Frames are delivered on a dedicated analysis thread and only the latest frame is kept. Each
+ * detector runs at most one job at a time; a frame that arrives while every enabled detector is
+ * still busy is dropped instead of queued, so slow detectors never back up into the preview.
+ */
+class ScanAnalyzer implements ImageReader.OnImageAvailableListener {
+
+    /**
+     * One image may be held by in-flight detectors while {@link ImageReader#acquireLatestImage()}
+     * needs two more to skip ahead to the newest frame.
+     */
+    static final int MAX_IMAGES = 3;
+
+    private static final int CROP_BUFFERS_PER_BUCKET = 2;
+
+    private static final long CROP_POOL_MAX_BYTES = 8L * 1024 * 1024;
+
+    private final ReactContext mReactContext;
+
+    private final HandlerThread mAnalysisThread;
+
+    private final Handler mAnalysisHandler;
+
+    private final Executor mAnalysisExecutor;
+
+    private final FaceDetectorOptions faceDetectorOptions = new FaceDetectorOptions.Builder()
+            .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_FAST)
+            .setContourMode(FaceDetectorOptions.CONTOUR_MODE_NONE)
+            .setClassificationMode(FaceDetectorOptions.CLASSIFICATION_MODE_NONE)
+            .setMinFaceSize(0.55f)
+            .build();
+    private final FaceDetector mFaceDetector = FaceDetection.getClient(faceDetectorOptions);
+    private final BarcodeScannerOptions barcodeScannerOptions = new BarcodeScannerOptions.Builder()
+            .build();
+    private final BarcodeScanner mBarcodeScanner = BarcodeScanning.getClient(barcodeScannerOptions);
+    private final TextRecognizerOptions textRecognizerOptions = new TextRecognizerOptions.Builder()
+            .build();
+    private final TextRecognizer mTextRecognizer = TextRecognition.getClient(textRecognizerOptions);
+
+    private volatile boolean mShouldRecognizeText = false;
+    private volatile boolean mShouldReadBarcodes = false;
+    private volatile boolean mShouldDetectFaces = false;
+
+    private final AtomicBoolean mFaceDetectorBusy = new AtomicBoolean();
+    private final AtomicBoolean mBarcodeScannerBusy = new AtomicBoolean();
+    private final AtomicBoolean mTextRecognizerBusy = new AtomicBoolean();
+
+    private final DetectorThrottle mFaceDetectorThrottle = new DetectorThrottle();
+    private final DetectorThrottle mBarcodeScannerThrottle = new DetectorThrottle();
+    private final DetectorThrottle mTextRecognizerThrottle = new DetectorThrottle();
+
+    private final ByteBufferPool mCropBufferPool =
+            new ByteBufferPool(CROP_BUFFERS_PER_BUCKET, CROP_POOL_MAX_BYTES);
+
+    private volatile ScanAreaOfInterest mAreaOfInterest;
+
+    private volatile int mRotation = 90;
+
+    private volatile boolean mMirrored = false;
+
+    private final BarcodeDeduplicator mBarcodeDeduplicator = new BarcodeDeduplicator();
+
+    private final AtomicLong mFramesAnalyzed = new AtomicLong();
+    private final AtomicLong mFramesDropped = new AtomicLong();
+
+    ScanAnalyzer(ReactContext context) {
+        mReactContext = context;
+        mAnalysisThread = new HandlerThread("RNCamera-Analysis-Thread");
+        mAnalysisThread.start();
+        mAnalysisHandler = new Handler(mAnalysisThread.getLooper());
+        mAnalysisExecutor = mAnalysisHandler::post;
+    }
+
+    /**
+     * Handler the scan {@link ImageReader} should deliver its frames on.
+     */
+    Handler getHandler() {
+        return mAnalysisHandler;
+    }
+
+    void setDetectors(boolean shouldRecognizeText, boolean shouldReadBarcodes, boolean shouldDetectFaces) {
+        mShouldRecognizeText = shouldRecognizeText;
+        mShouldReadBarcodes = shouldReadBarcodes;
+        mShouldDetectFaces = shouldDetectFaces;
+    }
+
+    /**
+     * @param rotation Clockwise rotation, in degrees, that makes scan frames upright.
+     */
+    void setRotation(int rotation) {
+        mRotation = rotation;
+    }
+
+    /**
+     * @param lensFacing {@link CameraCharacteristics#LENS_FACING} of the camera feeding the frames.
+     *                   Front camera previews are mirrored, which the area of interest follows.
+     */
+    void setLensFacing(int lensFacing) {
+        mMirrored = lensFacing == CameraCharacteristics.LENS_FACING_FRONT;
+    }
+
+    /**
+     * Restricts barcode and text detection to part of the frame, {@code null} for the whole frame.
+     */
+    void setAreaOfInterest(ScanAreaOfInterest areaOfInterest) {
+        mAreaOfInterest = areaOfInterest;
+    }
+
+    void setFaceDetectorMaxFps(float maxFps) {
+        mFaceDetectorThrottle.setMaxFps(maxFps);
+    }
+
+    void setBarcodeMaxFps(float maxFps) {
+        mBarcodeScannerThrottle.setMaxFps(maxFps);
+    }
+
+    void setTextRecognizerMaxFps(float maxFps) {
+        mTextRecognizerThrottle.setMaxFps(maxFps);
+    }
+
+    void setBarcodeDedupTtl(long ttlMillis) {
+        mBarcodeDeduplicator.setTtlMillis(ttlMillis);
+    }
+
+    void setBarcodeDedupMaxSize(int maxSize) {
+        mBarcodeDeduplicator.setMaxSize(maxSize);
+    }
+
+    WritableMap getStats() {
+        WritableMap stats = Arguments.createMap();
+        stats.putDouble("framesAnalyzed", mFramesAnalyzed.get());
+        stats.putDouble("framesDropped", mFramesDropped.get());
+        stats.putDouble("faceDetectorLatencyMs", mFaceDetectorThrottle.getLatencyMillis());
+        stats.putDouble("barcodeLatencyMs", mBarcodeScannerThrottle.getLatencyMillis());
+        stats.putDouble("textRecognizerLatencyMs", mTextRecognizerThrottle.getLatencyMillis());
+        stats.putDouble("barcodeCacheHits", mBarcodeDeduplicator.getHits());
+        stats.putDouble("barcodeCacheMisses", mBarcodeDeduplicator.getMisses());
+        return stats;
+    }
+
+    void release() {
+        mAnalysisThread.quitSafely();
+        mFaceDetector.close();
+        mBarcodeScanner.close();
+        mTextRecognizer.close();
+    }
+
+    @Override
+    public void onImageAvailable(ImageReader reader) {
+        Image image;
+        try {
+            image = reader.acquireLatestImage();
+        } catch (IllegalStateException e) {
+            // every image is still held by a detector
+            mFramesDropped.incrementAndGet();
+            return;
+        }
+        if (image == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        boolean detectFaces = mShouldDetectFaces && mFaceDetectorThrottle.shouldRun(now)
+                && mFaceDetectorBusy.compareAndSet(false, true);
+        boolean readBarcodes = mShouldReadBarcodes && mBarcodeScannerThrottle.shouldRun(now)
+                && mBarcodeScannerBusy.compareAndSet(false, true);
+        boolean recognizeText = mShouldRecognizeText && mTextRecognizerThrottle.shouldRun(now)
+                && mTextRecognizerBusy.compareAndSet(false, true);
+        if (!detectFaces && !readBarcodes && !recognizeText) {
+            mFramesDropped.incrementAndGet();
+            image.close();
+            return;
+        }
+        mFramesAnalyzed.incrementAndGet();
+
+        // barcode and text detection only look at the area of interest, when there is one
+        int rotation = mRotation;
+        AnalysisFrame croppedFrame = null;
+        if (readBarcodes || recognizeText) {
+            croppedFrame = createCroppedFrame(image, rotation);
+        }
+
+        // build the detector input once and keep the image open until every detector is done
+        AnalysisFrame fullFrame = null;
+        if (detectFaces || croppedFrame == null) {
+            fullFrame = new AnalysisFrame(InputImage.fromMediaImage(image, rotation), image.getTimestamp(),
+                    image::close);
+        } else {
+            image.close();
+        }
+        AnalysisFrame scanFrame = croppedFrame != null ? croppedFrame : fullFrame;
+
+        if (detectFaces) {
+            fullFrame.retain();
+            detectFaces(fullFrame);
+        }
+        if (readBarcodes) {
+            scanFrame.retain();
+            detectBarcodes(scanFrame);
+        }
+        if (recognizeText) {
+            scanFrame.retain();
+            detectText(scanFrame);
+        }
+        if (fullFrame != null) {
+            fullFrame.release();
+        }
+        if (croppedFrame != null) {
+            croppedFrame.release();
+        }
+    }
+
+    /**
+     * Copies the area of interest out of {@code image} into a pooled NV21 buffer, so the detectors
+     * only process the pixels the user is aiming at. Returns {@code null} without an area.
+     */
+    private AnalysisFrame createCroppedFrame(Image image, int rotation) {
+        ScanAreaOfInterest areaOfInterest = mAreaOfInterest;
+        if (areaOfInterest == null) {
+            return null;
+        }
+        Rect crop = areaOfInterest.toBufferRect(image.getWidth(), image.getHeight(), rotation, mMirrored);
+        if (crop.width() < 2 || crop.height() < 2) {
+            return null;
+        }
+        ByteBuffer buffer = mCropBufferPool.acquire(crop.width() * crop.height() * 3 / 2);
+        ScanAreaOfInterest.copyToNv21(image, crop, buffer);
+        InputImage inputImage = InputImage.fromByteBuffer(buffer, crop.width(), crop.height(), rotation,
+                InputImage.IMAGE_FORMAT_NV21);
+        return new AnalysisFrame(inputImage, image.getTimestamp(), () -> mCropBufferPool.release(buffer));
+    }
+
+    private void detectFaces(AnalysisFrame frame) {
+        InputImage inputImage = frame.getInputImage();
+        mFaceDetectorThrottle.onStarted(System.nanoTime());
+        Task<List<Face>> detectFacetask = mFaceDetector.process(inputImage);
+        detectFacetask.addOnSuccessListener(mAnalysisExecutor, faces -> {
+            if (faces.isEmpty()) {
+                return;
+            }
+            WritableArray facesData = Arguments.createArray();
+            for (Face face : faces) {
+                Rect rect = face.getBoundingBox();
+                WritableMap faceData = Arguments.createMap();
+                faceData.putInt("width", rect.width());
+                faceData.putInt("height", rect.height());
+                faceData.putInt("centerX", rect.centerX());
+                faceData.putInt("centerY", rect.centerY());
+                faceData.putInt("top", rect.top);
+                faceData.putInt("left", rect.left);
+                facesData.pushMap(faceData);
+            }
+            WritableMap faceDetectionEventData = Arguments.createMap();
+            faceDetectionEventData.putDouble("timestamp", frame.getTimestampMillis());
+            faceDetectionEventData.putArray("faces", facesData);
+            emit("onFacesDetected", faceDetectionEventData);
+        });
+        detectFacetask.addOnCompleteListener(mAnalysisExecutor, task -> {
+            mFaceDetectorThrottle.onFinished(System.nanoTime());
+            frame.release();
+            mFaceDetectorBusy.set(false);
+        });
+    }
+
+    private void detectBarcodes(AnalysisFrame frame) {
+        InputImage inputImage = frame.getInputImage();
+        mBarcodeScannerThrottle.onStarted(System.nanoTime());
+        Task<List<Barcode>> detectBarcodeTask = mBarcodeScanner.process(inputImage);
+        detectBarcodeTask.addOnSuccessListener(mAnalysisExecutor, barcodes -> {
+            long now = SystemClock.elapsedRealtime();
+            WritableArray barcodesData = null;
+            for (Barcode barcode : barcodes) {
+                if (!mBarcodeDeduplicator.shouldReport(barcode.getRawValue(), barcode.getFormat(), now)) {
+                    continue;
+                }
+                if (barcodesData == null) {
+                    barcodesData = Arguments.createArray();
+                }
+                WritableMap barcodeData = Arguments.createMap();
+                barcodeData.putString("rawValue", barcode.getRawValue());
+                barcodeData.putInt("format", barcode.getFormat());
+                barcodesData.pushMap(barcodeData);
+            }
+            if (barcodesData == null) {
+                return;
+            }
+            WritableMap barcodeEventData = Arguments.createMap();
+            barcodeEventData.putDouble("timestamp", frame.getTimestampMillis());
+            barcodeEventData.putArray("barcodes", barcodesData);
+            emit("onBarCodeRead", barcodeEventData);
+        });
+        detectBarcodeTask.addOnCompleteListener(mAnalysisExecutor, task -> {
+            mBarcodeScannerThrottle.onFinished(System.nanoTime());
+            frame.release();
+            mBarcodeScannerBusy.set(false);
+        });
+    }
+
+    private void detectText(AnalysisFrame frame) {
+        InputImage inputImage = frame.getInputImage();
+        mTextRecognizerThrottle.onStarted(System.nanoTime());
+        Task<Text> detectTextTask = mTextRecognizer.process(inputImage);
+        detectTextTask.addOnSuccessListener(mAnalysisExecutor, text -> {
+            if(!text.getText().isEmpty()) {
+                WritableMap textDetectedEventData = Arguments.createMap();
+                textDetectedEventData.putDouble("timestamp", frame.getTimestampMillis());
+                textDetectedEventData.putString("textDetected", text.getText());
+                emit("onTextRecognized", textDetectedEventData);
+            }
+        });
+        detectTextTask.addOnCompleteListener(mAnalysisExecutor, task -> {
+            mTextRecognizerThrottle.onFinished(System.nanoTime());
+            frame.release();
+            mTextRecognizerBusy.set(false);
+        });
+    }
+
+    private void emit(String eventName, WritableMap data) {
+        mReactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                .emit(eventName, data);
+    }
+}
@@ -0,0 +1,109 @@
+package com.rncamerademo.nativemodules.camera;
+
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.media.Image;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Region of the preview that scanning detectors should look at, in normalized (0..1) coordinates
+ * of the upright preview as the user sees it.
+ */
+class ScanAreaOfInterest {
+
+    private final RectF mArea;
+
+    ScanAreaOfInterest(float x, float y, float width, float height) {
+        mArea = new RectF(clamp(x), clamp(y), clamp(x + width), clamp(y + height));
+    }
+
+    /**
+     * Maps the area onto a sensor buffer that must be rotated clockwise by {@code rotation}
+     * degrees to be upright. The result is aligned to even coordinates so it can be applied to
+     * 4:2:0 subsampled chroma planes.
+     *
+     * @param mirrored True if the preview shows the frame flipped horizontally, as it does for
+     *                 front cameras, so the area has to be flipped back first.
+     */
+    Rect toBufferRect(int bufferWidth, int bufferHeight, int rotation, boolean mirrored) {
+        float areaLeft = mirrored ? 1f - mArea.right : mArea.left;
+        float areaRight = mirrored ? 1f - mArea.left : mArea.right;
+        float left, top, right, bottom;
+        switch (rotation) {
+            case 90:
+                left = mArea.top;
+                top = 1f - areaRight;
+                right = mArea.bottom;
+                bottom = 1f - areaLeft;
+                break;
+            case 180:
+                left = 1f - areaRight;
+                top = 1f - mArea.bottom;
+                right = 1f - areaLeft;
+                bottom = 1f - mArea.top;
+                break;
+            case 270:
+                left = 1f - mArea.bottom;
+                top = areaLeft;
+                right = 1f - mArea.top;
+                bottom = areaRight;
+                break;
+            default:
+                left = areaLeft;
+                top = mArea.top;
+                right = areaRight;
+                bottom = mArea.bottom;
+                break;
+        }
+        return new Rect(
+                (int) (left * bufferWidth) & ~1,
+                (int) (top * bufferHeight) & ~1,
+                (int) (right * bufferWidth) & ~1,
+                (int) (bottom * bufferHeight) & ~1);
+    }
+
+    /**
+     * Copies {@code crop} out of a YUV_420_888 image into {@code out} as NV21.
+     *
+     * @param out Receives {@code crop.width() * crop.height() * 3 / 2} bytes, flipped for reading.
+     */
+    static void copyToNv21(Image image, Rect crop, ByteBuffer out) {
+        Image.Plane[] planes = image.getPlanes();
+        int width = crop.width();
+        int height = crop.height();
+        byte[] dst = out.array();
+        int offset = out.arrayOffset();
+
+        // getBuffer() hands out the plane's own buffer, and other detectors read the same image
+        // after us, so move a duplicate's position rather than the plane's
+        ByteBuffer yBuffer = planes[0].getBuffer().duplicate();
+        int yRowStride = planes[0].getRowStride();
+        for (int row = 0; row < height; row++) {
+            yBuffer.position((crop.top + row) * yRowStride + crop.left);
+            yBuffer.get(dst, offset, width);
+            offset += width;
+        }
+
+        ByteBuffer uBuffer = planes[1].getBuffer();
+        ByteBuffer vBuffer = planes[2].getBuffer();
+        int chromaRowStride = planes[1].getRowStride();
+        int chromaPixelStride = planes[1].getPixelStride();
+        int chromaTop = crop.top / 2;
+        int chromaLeft = crop.left / 2;
+        for (int row = 0; row < height / 2; row++) {
+            int rowStart = (chromaTop + row) * chromaRowStride;
+            for (int col = 0; col < width / 2; col++) {
+                int index = rowStart + (chromaLeft + col) * chromaPixelStride;
+                dst[offset++] = vBuffer.get(index);
+                dst[offset++] = uBuffer.get(index);
+            }
+        }
+        out.position(0);
+        out.limit(offset - out.arrayOffset());
+    }
+
+    private static float clamp(float value) {
+        return Math.max(0f, Math.min(1f, value));
+    }
+}
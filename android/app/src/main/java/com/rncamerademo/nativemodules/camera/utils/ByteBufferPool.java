@@ -0,0 +1,96 @@
+package com.rncamerademo.nativemodules.camera.utils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Size-bucketed pool of heap {@link ByteBuffer}s used to hand frames off without allocating a
+ * new buffer for every capture.
+ *
+ * Buckets are powers of two, so a buffer borrowed for {@code n} bytes has a capacity of at least
+ * {@code n}. Buffers are array backed, which lets consumers that need a {@code byte[]}
+ * (BitmapFactory, Base64, streams) read {@link ByteBuffer#array()} directly.
+ */
+public class ByteBufferPool {
+
+    private static final int MIN_BUCKET_SHIFT = 12; // 4 KiB
+    private static final int MAX_BUCKET_SHIFT = 30; // 1 GiB
+
+    private final ArrayDeque<ByteBuffer>[] mBuckets;
+    private final int mMaxBuffersPerBucket;
+    private final long mMaxRetainedBytes;
+    private long mRetainedBytes;
+
+    @SuppressWarnings("unchecked")
+    public ByteBufferPool(int maxBuffersPerBucket, long maxRetainedBytes) {
+        mBuckets = new ArrayDeque[MAX_BUCKET_SHIFT + 1];
+        mMaxBuffersPerBucket = maxBuffersPerBucket;
+        mMaxRetainedBytes = maxRetainedBytes;
+    }
+
+    /**
+     * Borrows a cleared buffer with a capacity of at least {@code size} bytes. The buffer must be
+     * handed back through {@link #release(ByteBuffer)} once the caller is done with it.
+     */
+    public synchronized ByteBuffer acquire(int size) {
+        int shift = bucketFor(size);
+        if (shift > MAX_BUCKET_SHIFT) {
+            return ByteBuffer.allocate(size);
+        }
+        ArrayDeque<ByteBuffer> buffers = mBuckets[shift];
+        if (buffers != null && !buffers.isEmpty()) {
+            ByteBuffer buffer = buffers.pop();
+            mRetainedBytes -= buffer.capacity();
+            buffer.clear();
+            return buffer;
+        }
+        return ByteBuffer.allocate(1 << shift);
+    }
+
+    /**
+     * Returns a buffer to the pool. Buffers that were not borrowed from a pool, or that would push
+     * the pool over its retention budget, are left to the garbage collector.
+     */
+    public synchronized void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.hasArray()) {
+            return;
+        }
+        int capacity = buffer.capacity();
+        if (Integer.bitCount(capacity) != 1 || capacity < (1 << MIN_BUCKET_SHIFT)) {
+            return;
+        }
+        if (mRetainedBytes + capacity > mMaxRetainedBytes) {
+            return;
+        }
+        int shift = Integer.numberOfTrailingZeros(capacity);
+        ArrayDeque<ByteBuffer> buffers = mBuckets[shift];
+        if (buffers == null) {
+            buffers = new ArrayDeque<>(mMaxBuffersPerBucket);
+            mBuckets[shift] = buffers;
+        }
+        if (buffers.size() >= mMaxBuffersPerBucket) {
+            return;
+        }
+        buffers.push(buffer);
+        mRetainedBytes += capacity;
+    }
+
+    /**
+     * Drops every pooled buffer.
+     */
+    public synchronized void clear() {
+        for (ArrayDeque<ByteBuffer> buffers : mBuckets) {
+            if (buffers != null) {
+                buffers.clear();
+            }
+        }
+        mRetainedBytes = 0;
+    }
+
+    private static int bucketFor(int size) {
+        if (size <= (1 << MIN_BUCKET_SHIFT)) {
+            return MIN_BUCKET_SHIFT;
+        }
+        return 32 - Integer.numberOfLeadingZeros(size - 1);
+    }
+}
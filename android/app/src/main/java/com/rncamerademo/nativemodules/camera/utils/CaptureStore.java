@@ -0,0 +1,204 @@
+package com.rncamerademo.nativemodules.camera.utils;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.WritableMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Directory that captures are saved into when no explicit path is given, kept within a size and
+ * age budget by evicting the least recently written files.
+ *
+ * The index of files is built lazily from disk the first time it is needed and maintained in
+ * memory afterwards. All bookkeeping and deletion runs on the store's own thread, so saving a
+ * picture never waits on eviction.
+ */
+public class CaptureStore {
+
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+    public static final long DEFAULT_MAX_AGE_MS = 7L * 24 * 60 * 60 * 1000;
+
+    // temp files younger than this may still be written by PictureFileWriter on the persist thread
+    private static final long STALE_TEMP_FILE_MS = 60 * 1000;
+
+    private final File mDirectory;
+
+    private final HandlerThread mStoreThread;
+    private final Handler mStoreHandler;
+
+    // everything below is only touched on the store thread
+
+    // file name -> size, oldest write first
+    private final LinkedHashMap<String, Long> mIndex = new LinkedHashMap<>();
+    private boolean mIndexed = false;
+    private long mTotalBytes = 0;
+    private long mEvictedCount = 0;
+
+    private volatile long mMaxBytes = DEFAULT_MAX_BYTES;
+    private volatile long mMaxAgeMs = DEFAULT_MAX_AGE_MS;
+
+    public CaptureStore(File directory) {
+        mDirectory = directory;
+        mStoreThread = new HandlerThread("RNCamera-Store-Thread");
+        mStoreThread.start();
+        mStoreHandler = new Handler(mStoreThread.getLooper());
+    }
+
+    public File getDirectory() {
+        return mDirectory;
+    }
+
+    /**
+     * @return a fresh path inside the store for a capture with the given extension.
+     */
+    public String newFilePath(String extension) throws IOException {
+        return RNFileUtils.getOutputFilePath(mDirectory, extension);
+    }
+
+    /**
+     * @return true if {@code file} lives in the store and is subject to eviction.
+     */
+    public boolean contains(File file) {
+        return mDirectory.equals(file.getParentFile());
+    }
+
+    /**
+     * Records a file that has just been written into the store and trims the store if it is now
+     * over budget.
+     */
+    public void onFileAdded(final File file) {
+        final long size = file.length();
+        mStoreHandler.post(() -> {
+            ensureIndexed();
+            Long previous = mIndex.remove(file.getName());
+            if (previous != null) {
+                mTotalBytes -= previous;
+            }
+            mIndex.put(file.getName(), size);
+            mTotalBytes += size;
+            trim(file.getName());
+        });
+    }
+
+    /**
+     * Changes the budget. A value of 0 or less leaves that limit unbounded.
+     */
+    public void configure(long maxBytes, long maxAgeMs) {
+        mMaxBytes = maxBytes;
+        mMaxAgeMs = maxAgeMs;
+        mStoreHandler.post(() -> {
+            ensureIndexed();
+            trim(null);
+        });
+    }
+
+    /**
+     * Resolves with the store's file count, size and budget.
+     */
+    public void getStats(final Promise promise) {
+        mStoreHandler.post(() -> {
+            ensureIndexed();
+            WritableMap stats = Arguments.createMap();
+            stats.putString("directory", mDirectory.getAbsolutePath());
+            stats.putInt("fileCount", mIndex.size());
+            stats.putDouble("totalBytes", mTotalBytes);
+            stats.putDouble("maxBytes", mMaxBytes);
+            stats.putDouble("maxAgeMs", mMaxAgeMs);
+            stats.putDouble("evictedCount", mEvictedCount);
+            promise.resolve(stats);
+        });
+    }
+
+    /**
+     * Deletes every capture in the store and resolves with the number of files removed.
+     */
+    public void purge(final Promise promise) {
+        mStoreHandler.post(() -> {
+            ensureIndexed();
+            int removed = 0;
+            Iterator<Map.Entry<String, Long>> iterator = mIndex.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Long> entry = iterator.next();
+                if (new File(mDirectory, entry.getKey()).delete()) {
+                    removed++;
+                }
+                mTotalBytes -= entry.getValue();
+                iterator.remove();
+            }
+            promise.resolve(removed);
+        });
+    }
+
+    public void release() {
+        mStoreThread.quitSafely();
+    }
+
+    private void ensureIndexed() {
+        if (mIndexed) {
+            return;
+        }
+        mIndexed = true;
+
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long staleTempBefore = System.currentTimeMillis() - STALE_TEMP_FILE_MS;
+        List<File> captures = new ArrayList<>(files.length);
+        for (File file : files) {
+            if (!file.isFile()) {
+                continue;
+            }
+            if (file.getName().startsWith(".")) {
+                // unfinished writes left behind by a crash; recent ones may be in flight
+                if (file.lastModified() < staleTempBefore) {
+                    file.delete();
+                }
+                continue;
+            }
+            captures.add(file);
+        }
+        Collections.sort(captures, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : captures) {
+            long size = file.length();
+            mIndex.put(file.getName(), size);
+            mTotalBytes += size;
+        }
+        trim(null);
+    }
+
+    // evicts the oldest files until the store is within budget, never touching keepName
+    private void trim(String keepName) {
+        long maxBytes = mMaxBytes;
+        long oldestAllowed = mMaxAgeMs > 0 ? System.currentTimeMillis() - mMaxAgeMs : Long.MIN_VALUE;
+
+        Iterator<Map.Entry<String, Long>> iterator = mIndex.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            if (entry.getKey().equals(keepName)) {
+                continue;
+            }
+            File file = new File(mDirectory, entry.getKey());
+            boolean overSize = maxBytes > 0 && mTotalBytes > maxBytes;
+            if (!overSize && file.lastModified() >= oldestAllowed) {
+                // entries are in write order, so nothing after this one is older
+                break;
+            }
+            file.delete();
+            mTotalBytes -= entry.getValue();
+            mEvictedCount++;
+            iterator.remove();
+        }
+    }
+}
@@ -0,0 +1,689 @@
+package com.rncamerademo.nativemodules.camera.utils;
+
+import androidx.exifinterface.media.ExifInterface;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Edits the EXIF of an in-memory JPEG and writes the result in one sequential pass, splicing a
+ * freshly built APP1 segment in place of the original one.
+ *
+ * Unlike {@link ExifInterface#saveAttributes()} this never rewrites a file that has already been
+ * written. Tags are the {@link ExifTag}s, named as in {@link ExifInterface} and taking the same
+ * string values. Tags the writer does not know about, and the JPEG thumbnail, are carried over
+ * from the original segment. Offset tags (strips, thumbnail location) and vendor raw-format tags
+ * cannot be set.
+ */
+public class ExifSegmentWriter {
+
+    static final int IFD_PRIMARY = 0;
+    static final int IFD_EXIF = 1;
+    static final int IFD_GPS = 2;
+    static final int IFD_INTEROP = 3;
+    static final int IFD_THUMBNAIL = 4;
+    static final int IFD_COUNT = 5;
+
+    static final int TYPE_BYTE = 1;
+    static final int TYPE_ASCII = 2;
+    static final int TYPE_SHORT = 3;
+    static final int TYPE_LONG = 4;
+    static final int TYPE_RATIONAL = 5;
+    static final int TYPE_UNDEFINED = 7;
+    static final int TYPE_SRATIONAL = 10;
+
+    // size in bytes of one value of each TIFF type, indexed by type
+    private static final int[] TYPE_SIZES = {0, 1, 1, 2, 4, 8, 1, 1, 2, 4, 8, 4, 8};
+
+    static final int TAG_EXIF_POINTER = 0x8769;
+    static final int TAG_GPS_POINTER = 0x8825;
+    static final int TAG_INTEROP_POINTER = 0xA005;
+    static final int TAG_STRIP_OFFSETS = 0x0111;
+    static final int TAG_STRIP_BYTE_COUNTS = 0x0117;
+    static final int TAG_THUMBNAIL_OFFSET = 0x0201;
+    static final int TAG_THUMBNAIL_LENGTH = 0x0202;
+
+    private static final int MARKER_SOI = 0xD8;
+    private static final int MARKER_APP1 = 0xE1;
+    private static final int MARKER_SOS = 0xDA;
+    private static final int MARKER_EOI = 0xD9;
+
+    private static final byte[] EXIF_HEADER = {'E', 'x', 'i', 'f', 0, 0};
+
+    // an APP1 segment length is 16 bits and includes the length field and the Exif header
+    static final int MAX_TIFF_SIZE = 0xFFFF - 2 - EXIF_HEADER.length;
+
+    // rationals written from decimal values keep this many fractional steps
+    private static final int RATIONAL_DENOMINATOR = 10000;
+
+    private static final class Entry {
+        final int type;
+        final int count;
+        final byte[] value;
+
+        Entry(int type, int count, byte[] value) {
+            this.type = type;
+            this.count = count;
+            this.value = value;
+        }
+    }
+
+    private final byte[] mJpeg;
+    private final int mOffset;
+    private final int mLength;
+
+    // bounds of the original Exif APP1 segment, marker included, or -1 if there is none
+    private int mSegmentStart = -1;
+    private int mSegmentEnd = -1;
+
+    @SuppressWarnings("unchecked")
+    private final TreeMap<Integer, Entry>[] mIfds = new TreeMap[IFD_COUNT];
+    private ByteOrder mByteOrder = ByteOrder.BIG_ENDIAN;
+    private byte[] mThumbnail;
+    private boolean mModified = false;
+
+    /**
+     * @throws IOException if the bytes do not start with a JPEG SOI marker.
+     */
+    public ExifSegmentWriter(byte[] jpeg, int offset, int length) throws IOException {
+        mJpeg = jpeg;
+        mOffset = offset;
+        mLength = length;
+        for (int i = 0; i < IFD_COUNT; i++) {
+            mIfds[i] = new TreeMap<>();
+        }
+        if (length < 4 || (jpeg[offset] & 0xFF) != 0xFF || (jpeg[offset + 1] & 0xFF) != MARKER_SOI) {
+            throw new IOException("Not a JPEG image.");
+        }
+        findExifSegment();
+    }
+
+    /**
+     * Sets a tag to a value formatted as {@link ExifInterface#setAttribute} expects, or removes it
+     * when {@code value} is null. Unknown tags and values that do not parse are ignored.
+     */
+    public void setAttribute(String name, String value) {
+        ExifTag tag = ExifTag.forName(name);
+        if (tag != null) {
+            setAttribute(tag, value);
+        }
+    }
+
+    public void setAttribute(ExifTag tag, String value) {
+        if (!tag.writable) {
+            return;
+        }
+        if (value == null) {
+            mModified |= mIfds[tag.ifd].remove(tag.id) != null;
+            return;
+        }
+        Entry entry = encode(tag.tiffType, value);
+        if (entry != null) {
+            mIfds[tag.ifd].put(tag.id, entry);
+            mModified = true;
+        }
+    }
+
+    public void setLatLong(double latitude, double longitude) {
+        setAttribute(ExifInterface.TAG_GPS_LATITUDE_REF, latitude >= 0 ? "N" : "S");
+        setAttribute(ExifInterface.TAG_GPS_LATITUDE, toDegreesMinutesSeconds(Math.abs(latitude)));
+        setAttribute(ExifInterface.TAG_GPS_LONGITUDE_REF, longitude >= 0 ? "E" : "W");
+        setAttribute(ExifInterface.TAG_GPS_LONGITUDE, toDegreesMinutesSeconds(Math.abs(longitude)));
+    }
+
+    public void setAltitude(double altitude) {
+        setAttribute(ExifInterface.TAG_GPS_ALTITUDE_REF, altitude >= 0 ? "0" : "1");
+        setAttribute(ExifInterface.TAG_GPS_ALTITUDE, Double.toString(Math.abs(altitude)));
+    }
+
+    /**
+     * Receives the tags present in the segment, typed as {@link ExifTag#type} says.
+     */
+    public interface TagReader {
+        void onString(ExifTag tag, String value);
+
+        void onInt(ExifTag tag, int value);
+
+        void onDouble(ExifTag tag, double value);
+    }
+
+    /**
+     * Reports every known tag present in the segment, without looking up absent ones.
+     * {@link ExifTag.Type#COORDINATE} tags are read through {@link #getLatLong()} and
+     * {@link #getAltitude()} instead.
+     */
+    public void readTags(TagReader reader) {
+        for (int ifd = 0; ifd < IFD_COUNT; ifd++) {
+            for (Map.Entry<Integer, Entry> present : mIfds[ifd].entrySet()) {
+                ExifTag tag = ExifTag.forLocation(ifd, present.getKey());
+                Entry entry = present.getValue();
+                if (tag == null || entry.count == 0) {
+                    continue;
+                }
+                switch (tag.type) {
+                    case STRING:
+                        reader.onString(tag, toString(tag, entry));
+                        break;
+                    case INT:
+                        reader.onInt(tag, (int) getNumber(entry, 0));
+                        break;
+                    case DOUBLE:
+                        reader.onDouble(tag, getNumber(entry, 0));
+                        break;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return latitude and longitude in decimal degrees, or null if the position is not set.
+     */
+    public double[] getLatLong() {
+        Entry latitude = mIfds[IFD_GPS].get(ExifTag.GPS_LATITUDE.id);
+        Entry longitude = mIfds[IFD_GPS].get(ExifTag.GPS_LONGITUDE.id);
+        Entry latitudeRef = mIfds[IFD_GPS].get(ExifTag.GPS_LATITUDE_REF.id);
+        Entry longitudeRef = mIfds[IFD_GPS].get(ExifTag.GPS_LONGITUDE_REF.id);
+        if (latitude == null || longitude == null || latitudeRef == null || longitudeRef == null
+                || latitude.count < 3 || longitude.count < 3) {
+            return null;
+        }
+        double lat = toDecimalDegrees(latitude);
+        double lon = toDecimalDegrees(longitude);
+        return new double[]{
+                latitudeRef.value[0] == 'S' ? -lat : lat,
+                longitudeRef.value[0] == 'W' ? -lon : lon
+        };
+    }
+
+    /**
+     * @return altitude in meters, or {@code defaultValue} if it is not set.
+     */
+    public double getAltitude(double defaultValue) {
+        Entry altitude = mIfds[IFD_GPS].get(ExifTag.GPS_ALTITUDE.id);
+        if (altitude == null || altitude.count == 0) {
+            return defaultValue;
+        }
+        Entry altitudeRef = mIfds[IFD_GPS].get(ExifTag.GPS_ALTITUDE_REF.id);
+        boolean belowSeaLevel = altitudeRef != null && altitudeRef.count > 0 && altitudeRef.value[0] == 1;
+        double meters = getNumber(altitude, 0);
+        return belowSeaLevel ? -meters : meters;
+    }
+
+    /**
+     * Drops every tag and the thumbnail, so the output carries no EXIF at all.
+     */
+    public void clear() {
+        for (TreeMap<Integer, Entry> ifd : mIfds) {
+            ifd.clear();
+        }
+        mThumbnail = null;
+        mModified = true;
+    }
+
+    /**
+     * Writes the JPEG with the edited EXIF segment. Untouched input is written through as is.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        for (ByteBuffer buffer : toBuffers()) {
+            out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+    }
+
+    /**
+     * The edited JPEG as a sequence of buffers for a gathering write. Only the new SOI and APP1
+     * are freshly allocated, the rest wraps the original bytes.
+     */
+    public ByteBuffer[] toBuffers() throws IOException {
+        if (!mModified) {
+            return new ByteBuffer[]{ByteBuffer.wrap(mJpeg, mOffset, mLength)};
+        }
+
+        byte[] tiff = buildTiff();
+        ByteBuffer head = ByteBuffer.allocate(2 + (tiff != null ? 4 + EXIF_HEADER.length + tiff.length : 0));
+        head.put((byte) 0xFF).put((byte) MARKER_SOI);
+        if (tiff != null) {
+            int segmentLength = 2 + EXIF_HEADER.length + tiff.length;
+            head.put((byte) 0xFF).put((byte) MARKER_APP1);
+            head.putShort((short) segmentLength);
+            head.put(EXIF_HEADER);
+            head.put(tiff);
+        }
+        head.flip();
+
+        int end = mOffset + mLength;
+        if (mSegmentStart < 0) {
+            return new ByteBuffer[]{head, ByteBuffer.wrap(mJpeg, mOffset + 2, mLength - 2)};
+        }
+        return new ByteBuffer[]{
+                head,
+                ByteBuffer.wrap(mJpeg, mOffset + 2, mSegmentStart - mOffset - 2),
+                ByteBuffer.wrap(mJpeg, mSegmentEnd, end - mSegmentEnd)
+        };
+    }
+
+    // Parsing
+
+    private void findExifSegment() {
+        int end = mOffset + mLength;
+        int position = mOffset + 2;
+        while (position + 4 <= end) {
+            if ((mJpeg[position] & 0xFF) != 0xFF) {
+                return;
+            }
+            int marker = mJpeg[position + 1] & 0xFF;
+            if (marker == 0xFF) {
+                // fill byte
+                position++;
+                continue;
+            }
+            if (marker == MARKER_SOS || marker == MARKER_EOI) {
+                return;
+            }
+            int segmentLength = ((mJpeg[position + 2] & 0xFF) << 8) | (mJpeg[position + 3] & 0xFF);
+            int payload = position + 4;
+            if (marker == MARKER_APP1 && segmentLength >= 2 + EXIF_HEADER.length
+                    && position + 2 + segmentLength <= end && hasExifHeader(payload)) {
+                mSegmentStart = position;
+                mSegmentEnd = position + 2 + segmentLength;
+                parseTiff(payload + EXIF_HEADER.length, segmentLength - 2 - EXIF_HEADER.length);
+                return;
+            }
+            position += 2 + segmentLength;
+        }
+    }
+
+    private boolean hasExifHeader(int position) {
+        for (int i = 0; i < EXIF_HEADER.length; i++) {
+            if (mJpeg[position + i] != EXIF_HEADER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void parseTiff(int start, int length) {
+        ByteBuffer tiff = ByteBuffer.wrap(mJpeg, start, length).slice();
+        try {
+            mByteOrder = tiff.get(0) == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+            tiff.order(mByteOrder);
+            parseIfd(tiff, tiff.getInt(4), IFD_PRIMARY, new boolean[IFD_COUNT]);
+        } catch (IndexOutOfBoundsException e) {
+            // a broken segment is dropped rather than carried over
+            for (TreeMap<Integer, Entry> ifd : mIfds) {
+                ifd.clear();
+            }
+            mThumbnail = null;
+            mModified = true;
+        }
+    }
+
+    private void parseIfd(ByteBuffer tiff, int offset, int ifd, boolean[] visited) {
+        if (visited[ifd]) {
+            return;
+        }
+        visited[ifd] = true;
+
+        int thumbnailOffset = -1;
+        int thumbnailLength = -1;
+        int count = tiff.getShort(offset) & 0xFFFF;
+        for (int i = 0; i < count; i++) {
+            int entry = offset + 2 + i * 12;
+            int tag = tiff.getShort(entry) & 0xFFFF;
+            int type = tiff.getShort(entry + 2) & 0xFFFF;
+            int valueCount = tiff.getInt(entry + 4);
+            if (type >= TYPE_SIZES.length || TYPE_SIZES[type] == 0 || valueCount < 0) {
+                continue;
+            }
+            // counts come straight from the file, so a bogus one must not overflow or allocate
+            long size = (long) TYPE_SIZES[type] * valueCount;
+            if (size > tiff.limit()) {
+                continue;
+            }
+
+            if (tag == TAG_EXIF_POINTER && ifd == IFD_PRIMARY) {
+                parseIfd(tiff, tiff.getInt(entry + 8), IFD_EXIF, visited);
+            } else if (tag == TAG_GPS_POINTER && ifd == IFD_PRIMARY) {
+                parseIfd(tiff, tiff.getInt(entry + 8), IFD_GPS, visited);
+            } else if (tag == TAG_INTEROP_POINTER && ifd == IFD_EXIF) {
+                parseIfd(tiff, tiff.getInt(entry + 8), IFD_INTEROP, visited);
+            } else if (tag == TAG_THUMBNAIL_OFFSET && ifd == IFD_THUMBNAIL) {
+                thumbnailOffset = tiff.getInt(entry + 8);
+            } else if (tag == TAG_THUMBNAIL_LENGTH && ifd == IFD_THUMBNAIL) {
+                thumbnailLength = tiff.getInt(entry + 8);
+            } else if (tag != TAG_STRIP_OFFSETS && tag != TAG_STRIP_BYTE_COUNTS) {
+                int valueOffset = size <= 4 ? entry + 8 : tiff.getInt(entry + 8);
+                if (valueOffset < 0 || valueOffset + size > tiff.limit()) {
+                    continue;
+                }
+                byte[] value = new byte[(int) size];
+                for (int b = 0; b < value.length; b++) {
+                    value[b] = tiff.get(valueOffset + b);
+                }
+                mIfds[ifd].put(tag, new Entry(type, valueCount, value));
+            }
+        }
+
+        if (ifd == IFD_PRIMARY) {
+            int next = tiff.getInt(offset + 2 + count * 12);
+            if (next != 0) {
+                parseIfd(tiff, next, IFD_THUMBNAIL, visited);
+            }
+        } else if (ifd == IFD_THUMBNAIL) {
+            // only JPEG thumbnails can be relocated, anything else is dropped
+            if (thumbnailOffset > 0 && thumbnailOffset < tiff.limit() && thumbnailLength > 0) {
+                thumbnailLength = Math.min(thumbnailLength, tiff.limit() - thumbnailOffset);
+                mThumbnail = new byte[thumbnailLength];
+                for (int b = 0; b < thumbnailLength; b++) {
+                    mThumbnail[b] = tiff.get(thumbnailOffset + b);
+                }
+            } else {
+                mIfds[IFD_THUMBNAIL].clear();
+            }
+        }
+    }
+
+    // Decoding
+
+    private double getNumber(Entry entry, int index) {
+        ByteBuffer value = ByteBuffer.wrap(entry.value).order(mByteOrder);
+        switch (entry.type) {
+            case TYPE_BYTE:
+            case TYPE_UNDEFINED:
+                return entry.value[index] & 0xFF;
+            case 6: // SBYTE
+                return entry.value[index];
+            case TYPE_SHORT:
+                return value.getShort(index * 2) & 0xFFFF;
+            case 8: // SSHORT
+                return value.getShort(index * 2);
+            case TYPE_LONG:
+                return value.getInt(index * 4) & 0xFFFFFFFFL;
+            case 9: // SLONG
+                return value.getInt(index * 4);
+            case TYPE_RATIONAL: {
+                long denominator = value.getInt(index * 8 + 4) & 0xFFFFFFFFL;
+                return denominator == 0 ? 0 : (value.getInt(index * 8) & 0xFFFFFFFFL) / (double) denominator;
+            }
+            case TYPE_SRATIONAL: {
+                int denominator = value.getInt(index * 8 + 4);
+                return denominator == 0 ? 0 : value.getInt(index * 8) / (double) denominator;
+            }
+            case 11: // FLOAT
+                return value.getFloat(index * 4);
+            case 12: // DOUBLE
+                return value.getDouble(index * 8);
+            default:
+                return 0;
+        }
+    }
+
+    // formats a value the way ExifInterface#getAttribute does
+    private String toString(ExifTag tag, Entry entry) {
+        switch (entry.type) {
+            case TYPE_ASCII: {
+                int length = 0;
+                while (length < entry.value.length && entry.value[length] != 0) {
+                    length++;
+                }
+                return new String(entry.value, 0, length, StandardCharsets.US_ASCII);
+            }
+            case TYPE_BYTE:
+            case TYPE_UNDEFINED:
+            case 6: // SBYTE
+                return new String(entry.value, StandardCharsets.US_ASCII);
+            default: {
+                if (tag == ExifTag.GPS_TIMESTAMP && entry.count == 3) {
+                    return String.format(Locale.US, "%02d:%02d:%02d",
+                            (int) getNumber(entry, 0), (int) getNumber(entry, 1), (int) getNumber(entry, 2));
+                }
+                StringBuilder builder = new StringBuilder();
+                for (int i = 0; i < entry.count; i++) {
+                    if (i > 0) {
+                        builder.append(',');
+                    }
+                    if (entry.type == TYPE_RATIONAL || entry.type == TYPE_SRATIONAL) {
+                        ByteBuffer value = ByteBuffer.wrap(entry.value).order(mByteOrder);
+                        long numerator = entry.type == TYPE_RATIONAL ? value.getInt(i * 8) & 0xFFFFFFFFL : value.getInt(i * 8);
+                        long denominator = entry.type == TYPE_RATIONAL ? value.getInt(i * 8 + 4) & 0xFFFFFFFFL : value.getInt(i * 8 + 4);
+                        builder.append(numerator).append('/').append(denominator);
+                    } else {
+                        double number = getNumber(entry, i);
+                        if (number == Math.rint(number)) {
+                            builder.append((long) number);
+                        } else {
+                            builder.append(number);
+                        }
+                    }
+                }
+                return builder.toString();
+            }
+        }
+    }
+
+    private double toDecimalDegrees(Entry entry) {
+        return getNumber(entry, 0) + getNumber(entry, 1) / 60 + getNumber(entry, 2) / 3600;
+    }
+
+    // Encoding
+
+    private Entry encode(int type, String value) {
+        try {
+            switch (type) {
+                case TYPE_ASCII: {
+                    byte[] chars = value.getBytes(StandardCharsets.US_ASCII);
+                    byte[] bytes = new byte[chars.length + 1];
+                    System.arraycopy(chars, 0, bytes, 0, chars.length);
+                    return new Entry(type, bytes.length, bytes);
+                }
+                case TYPE_UNDEFINED: {
+                    byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+                    return new Entry(type, bytes.length, bytes);
+                }
+                case TYPE_BYTE: {
+                    String[] parts = value.split(",");
+                    byte[] bytes = new byte[parts.length];
+                    try {
+                        for (int i = 0; i < parts.length; i++) {
+                            bytes[i] = (byte) Integer.parseInt(parts[i].trim());
+                        }
+                    } catch (NumberFormatException e) {
+                        // ExifInterface reports byte arrays such as GPSVersionID as raw characters
+                        bytes = value.getBytes(StandardCharsets.ISO_8859_1);
+                    }
+                    return new Entry(type, bytes.length, bytes);
+                }
+                case TYPE_SHORT:
+                case TYPE_LONG: {
+                    String[] parts = value.split(",");
+                    ByteBuffer buffer = ByteBuffer.allocate(parts.length * TYPE_SIZES[type]).order(mByteOrder);
+                    for (String part : parts) {
+                        long number = (long) Double.parseDouble(part.trim());
+                        if (type == TYPE_SHORT) {
+                            buffer.putShort((short) number);
+                        } else {
+                            buffer.putInt((int) number);
+                        }
+                    }
+                    return new Entry(type, parts.length, buffer.array());
+                }
+                case TYPE_RATIONAL:
+                case TYPE_SRATIONAL: {
+                    // GPSTimeStamp is exchanged as hh:mm:ss
+                    String[] parts = value.indexOf(':') >= 0 && value.indexOf(',') < 0
+                            ? value.split(":") : value.split(",");
+                    ByteBuffer buffer = ByteBuffer.allocate(parts.length * 8).order(mByteOrder);
+                    for (String part : parts) {
+                        String[] fraction = part.trim().split("/");
+                        long numerator;
+                        long denominator;
+                        if (fraction.length == 2) {
+                            numerator = (long) Double.parseDouble(fraction[0]);
+                            denominator = (long) Double.parseDouble(fraction[1]);
+                        } else {
+                            numerator = Math.round(Double.parseDouble(fraction[0]) * RATIONAL_DENOMINATOR);
+                            denominator = RATIONAL_DENOMINATOR;
+                        }
+                        if (type == TYPE_RATIONAL && numerator < 0) {
+                            return null;
+                        }
+                        buffer.putInt((int) numerator);
+                        buffer.putInt((int) denominator);
+                    }
+                    return new Entry(type, parts.length, buffer.array());
+                }
+                default:
+                    return null;
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String toDegreesMinutesSeconds(double value) {
+        int degrees = (int) value;
+        double remainder = (value - degrees) * 60;
+        int minutes = (int) remainder;
+        double seconds = (remainder - minutes) * 60;
+        return degrees + "/1," + minutes + "/1," + Math.round(seconds * RATIONAL_DENOMINATOR) + "/" + RATIONAL_DENOMINATOR;
+    }
+
+    // Serialization
+
+    private byte[] buildTiff() throws IOException {
+        TreeMap<Integer, Entry>[] ifds = layoutIfds(mThumbnail);
+        byte[] tiff = serialize(ifds, mThumbnail);
+        if (tiff != null && tiff.length > MAX_TIFF_SIZE && mThumbnail != null) {
+            // the thumbnail is the only part we can give up to fit
+            ifds = layoutIfds(null);
+            tiff = serialize(ifds, null);
+        }
+        if (tiff != null && tiff.length > MAX_TIFF_SIZE) {
+            throw new IOException("EXIF data does not fit in a JPEG APP1 segment.");
+        }
+        return tiff;
+    }
+
+    // copies of the IFDs with pointer entries in place; their values are filled in by serialize
+    @SuppressWarnings("unchecked")
+    private TreeMap<Integer, Entry>[] layoutIfds(byte[] thumbnail) {
+        TreeMap<Integer, Entry>[] ifds = new TreeMap[IFD_COUNT];
+        for (int i = 0; i < IFD_COUNT; i++) {
+            ifds[i] = new TreeMap<>(mIfds[i]);
+        }
+        if (thumbnail == null) {
+            ifds[IFD_THUMBNAIL].clear();
+        } else {
+            ifds[IFD_THUMBNAIL].put(TAG_THUMBNAIL_OFFSET, pointerEntry());
+            ifds[IFD_THUMBNAIL].put(TAG_THUMBNAIL_LENGTH, longEntry(thumbnail.length));
+        }
+        if (!ifds[IFD_INTEROP].isEmpty()) {
+            ifds[IFD_EXIF].put(TAG_INTEROP_POINTER, pointerEntry());
+        }
+        if (!ifds[IFD_EXIF].isEmpty()) {
+            ifds[IFD_PRIMARY].put(TAG_EXIF_POINTER, pointerEntry());
+        }
+        if (!ifds[IFD_GPS].isEmpty()) {
+            ifds[IFD_PRIMARY].put(TAG_GPS_POINTER, pointerEntry());
+        }
+        return ifds;
+    }
+
+    private byte[] serialize(TreeMap<Integer, Entry>[] ifds, byte[] thumbnail) {
+        if (ifds[IFD_PRIMARY].isEmpty() && ifds[IFD_THUMBNAIL].isEmpty()) {
+            return null;
+        }
+
+        // IFD0 first, right after the header, then the others each followed by their data
+        int[] ifdOffsets = new int[IFD_COUNT];
+        int size = 8;
+        for (int i = 0; i < IFD_COUNT; i++) {
+            if (i == IFD_PRIMARY || !ifds[i].isEmpty()) {
+                ifdOffsets[i] = size;
+                size += ifdSize(ifds[i]);
+            }
+        }
+        int thumbnailOffset = size;
+        if (thumbnail != null) {
+            size += thumbnail.length;
+        }
+
+        setPointer(ifds[IFD_PRIMARY], TAG_EXIF_POINTER, ifdOffsets[IFD_EXIF]);
+        setPointer(ifds[IFD_PRIMARY], TAG_GPS_POINTER, ifdOffsets[IFD_GPS]);
+        setPointer(ifds[IFD_EXIF], TAG_INTEROP_POINTER, ifdOffsets[IFD_INTEROP]);
+        setPointer(ifds[IFD_THUMBNAIL], TAG_THUMBNAIL_OFFSET, thumbnailOffset);
+
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(mByteOrder);
+        buffer.put((byte) (mByteOrder == ByteOrder.LITTLE_ENDIAN ? 'I' : 'M'));
+        buffer.put((byte) (mByteOrder == ByteOrder.LITTLE_ENDIAN ? 'I' : 'M'));
+        buffer.putShort((short) 42);
+        buffer.putInt(8);
+
+        for (int i = 0; i < IFD_COUNT; i++) {
+            if (i == IFD_PRIMARY || !ifds[i].isEmpty()) {
+                int next = i == IFD_PRIMARY && !ifds[IFD_THUMBNAIL].isEmpty() ? ifdOffsets[IFD_THUMBNAIL] : 0;
+                writeIfd(buffer, ifdOffsets[i], ifds[i], next);
+            }
+        }
+        if (thumbnail != null) {
+            buffer.position(thumbnailOffset);
+            buffer.put(thumbnail);
+        }
+        return buffer.array();
+    }
+
+    private static int ifdSize(TreeMap<Integer, Entry> ifd) {
+        int size = 2 + ifd.size() * 12 + 4;
+        for (Entry entry : ifd.values()) {
+            if (entry.value.length > 4) {
+                size += (entry.value.length + 1) & ~1;
+            }
+        }
+        return size;
+    }
+
+    private static void writeIfd(ByteBuffer buffer, int offset, TreeMap<Integer, Entry> ifd, int nextIfdOffset) {
+        int dataOffset = offset + 2 + ifd.size() * 12 + 4;
+        buffer.position(offset);
+        buffer.putShort((short) ifd.size());
+        for (Map.Entry<Integer, Entry> tag : ifd.entrySet()) {
+            Entry entry = tag.getValue();
+            buffer.putShort((short) (int) tag.getKey());
+            buffer.putShort((short) entry.type);
+            buffer.putInt(entry.count);
+            if (entry.value.length <= 4) {
+                buffer.put(entry.value);
+                for (int i = entry.value.length; i < 4; i++) {
+                    buffer.put((byte) 0);
+                }
+            } else {
+                buffer.putInt(dataOffset);
+                int entryEnd = buffer.position();
+                buffer.position(dataOffset);
+                buffer.put(entry.value);
+                dataOffset += (entry.value.length + 1) & ~1;
+                buffer.position(entryEnd);
+            }
+        }
+        buffer.putInt(nextIfdOffset);
+    }
+
+    private void setPointer(TreeMap<Integer, Entry> ifd, int tag, int offset) {
+        if (ifd.containsKey(tag)) {
+            ifd.put(tag, longEntry(offset));
+        }
+    }
+
+    private Entry pointerEntry() {
+        return longEntry(0);
+    }
+
+    private Entry longEntry(int value) {
+        return new Entry(TYPE_LONG, 1, ByteBuffer.allocate(4).order(mByteOrder).putInt(value).array());
+    }
+}
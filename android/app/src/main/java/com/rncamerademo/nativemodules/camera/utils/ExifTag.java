@@ -0,0 +1,215 @@
+package com.rncamerademo.nativemodules.camera.utils;
+
+import androidx.exifinterface.media.ExifInterface;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.rncamerademo.nativemodules.camera.utils.ExifSegmentWriter.IFD_EXIF;
+import static com.rncamerademo.nativemodules.camera.utils.ExifSegmentWriter.IFD_GPS;
+import static com.rncamerademo.nativemodules.camera.utils.ExifSegmentWriter.IFD_INTEROP;
+import static com.rncamerademo.nativemodules.camera.utils.ExifSegmentWriter.IFD_PRIMARY;
+import static com.rncamerademo.nativemodules.camera.utils.ExifSegmentWriter.IFD_THUMBNAIL;
+import static com.rncamerademo.nativemodules.camera.utils.ExifSegmentWriter.TYPE_ASCII;
+import static com.rncamerademo.nativemodules.camera.utils.ExifSegmentWriter.TYPE_BYTE;
+import static com.rncamerademo.nativemodules.camera.utils.ExifSegmentWriter.TYPE_LONG;
+import static com.rncamerademo.nativemodules.camera.utils.ExifSegmentWriter.TYPE_RATIONAL;
+import static com.rncamerademo.nativemodules.camera.utils.ExifSegmentWriter.TYPE_SHORT;
+import static com.rncamerademo.nativemodules.camera.utils.ExifSegmentWriter.TYPE_SRATIONAL;
+import static com.rncamerademo.nativemodules.camera.utils.ExifSegmentWriter.TYPE_UNDEFINED;
+
+/**
+ * EXIF tags exchanged with JS, with the value type they are reported as and where they live in
+ * a JPEG's APP1 segment. Tags without a location are known by name only and never reported.
+ */
+public enum ExifTag {
+    ARTIST(ExifInterface.TAG_ARTIST, Type.STRING, 0x013B, IFD_PRIMARY, TYPE_ASCII, true),
+    BITS_PER_SAMPLE(ExifInterface.TAG_BITS_PER_SAMPLE, Type.INT, 0x0102, IFD_PRIMARY, TYPE_SHORT, true),
+    COMPRESSION(ExifInterface.TAG_COMPRESSION, Type.INT, 0x0103, IFD_PRIMARY, TYPE_SHORT, true),
+    COPYRIGHT(ExifInterface.TAG_COPYRIGHT, Type.STRING, 0x8298, IFD_PRIMARY, TYPE_ASCII, true),
+    DATETIME(ExifInterface.TAG_DATETIME, Type.STRING, 0x0132, IFD_PRIMARY, TYPE_ASCII, true),
+    IMAGE_DESCRIPTION(ExifInterface.TAG_IMAGE_DESCRIPTION, Type.STRING, 0x010E, IFD_PRIMARY, TYPE_ASCII, true),
+    IMAGE_LENGTH(ExifInterface.TAG_IMAGE_LENGTH, Type.INT, 0x0101, IFD_PRIMARY, TYPE_LONG, true),
+    IMAGE_WIDTH(ExifInterface.TAG_IMAGE_WIDTH, Type.INT, 0x0100, IFD_PRIMARY, TYPE_LONG, true),
+    JPEG_INTERCHANGE_FORMAT(ExifInterface.TAG_JPEG_INTERCHANGE_FORMAT, Type.INT),
+    JPEG_INTERCHANGE_FORMAT_LENGTH(ExifInterface.TAG_JPEG_INTERCHANGE_FORMAT_LENGTH, Type.INT),
+    MAKE(ExifInterface.TAG_MAKE, Type.STRING, 0x010F, IFD_PRIMARY, TYPE_ASCII, true),
+    MODEL(ExifInterface.TAG_MODEL, Type.STRING, 0x0110, IFD_PRIMARY, TYPE_ASCII, true),
+    ORIENTATION(ExifInterface.TAG_ORIENTATION, Type.INT, 0x0112, IFD_PRIMARY, TYPE_SHORT, true),
+    PHOTOMETRIC_INTERPRETATION(ExifInterface.TAG_PHOTOMETRIC_INTERPRETATION, Type.INT, 0x0106, IFD_PRIMARY, TYPE_SHORT, true),
+    PLANAR_CONFIGURATION(ExifInterface.TAG_PLANAR_CONFIGURATION, Type.INT, 0x011C, IFD_PRIMARY, TYPE_SHORT, true),
+    PRIMARY_CHROMATICITIES(ExifInterface.TAG_PRIMARY_CHROMATICITIES, Type.DOUBLE, 0x013F, IFD_PRIMARY, TYPE_RATIONAL, true),
+    REFERENCE_BLACK_WHITE(ExifInterface.TAG_REFERENCE_BLACK_WHITE, Type.DOUBLE, 0x0214, IFD_PRIMARY, TYPE_RATIONAL, true),
+    RESOLUTION_UNIT(ExifInterface.TAG_RESOLUTION_UNIT, Type.INT, 0x0128, IFD_PRIMARY, TYPE_SHORT, true),
+    ROWS_PER_STRIP(ExifInterface.TAG_ROWS_PER_STRIP, Type.INT, 0x0116, IFD_PRIMARY, TYPE_LONG, true),
+    SAMPLES_PER_PIXEL(ExifInterface.TAG_SAMPLES_PER_PIXEL, Type.INT, 0x0115, IFD_PRIMARY, TYPE_SHORT, true),
+    SOFTWARE(ExifInterface.TAG_SOFTWARE, Type.STRING, 0x0131, IFD_PRIMARY, TYPE_ASCII, true),
+    STRIP_BYTE_COUNTS(ExifInterface.TAG_STRIP_BYTE_COUNTS, Type.INT),
+    STRIP_OFFSETS(ExifInterface.TAG_STRIP_OFFSETS, Type.INT),
+    TRANSFER_FUNCTION(ExifInterface.TAG_TRANSFER_FUNCTION, Type.INT, 0x012D, IFD_PRIMARY, TYPE_SHORT, true),
+    WHITE_POINT(ExifInterface.TAG_WHITE_POINT, Type.DOUBLE, 0x013E, IFD_PRIMARY, TYPE_RATIONAL, true),
+    X_RESOLUTION(ExifInterface.TAG_X_RESOLUTION, Type.DOUBLE, 0x011A, IFD_PRIMARY, TYPE_RATIONAL, true),
+    Y_CB_CR_COEFFICIENTS(ExifInterface.TAG_Y_CB_CR_COEFFICIENTS, Type.DOUBLE, 0x0211, IFD_PRIMARY, TYPE_RATIONAL, true),
+    Y_CB_CR_POSITIONING(ExifInterface.TAG_Y_CB_CR_POSITIONING, Type.INT, 0x0213, IFD_PRIMARY, TYPE_SHORT, true),
+    Y_CB_CR_SUB_SAMPLING(ExifInterface.TAG_Y_CB_CR_SUB_SAMPLING, Type.INT, 0x0212, IFD_PRIMARY, TYPE_SHORT, true),
+    Y_RESOLUTION(ExifInterface.TAG_Y_RESOLUTION, Type.DOUBLE, 0x011B, IFD_PRIMARY, TYPE_RATIONAL, true),
+    APERTURE_VALUE(ExifInterface.TAG_APERTURE_VALUE, Type.DOUBLE, 0x9202, IFD_EXIF, TYPE_RATIONAL, true),
+    BRIGHTNESS_VALUE(ExifInterface.TAG_BRIGHTNESS_VALUE, Type.DOUBLE, 0x9203, IFD_EXIF, TYPE_SRATIONAL, true),
+    CFA_PATTERN(ExifInterface.TAG_CFA_PATTERN, Type.STRING, 0xA302, IFD_EXIF, TYPE_UNDEFINED, true),
+    COLOR_SPACE(ExifInterface.TAG_COLOR_SPACE, Type.INT, 0xA001, IFD_EXIF, TYPE_SHORT, true),
+    COMPONENTS_CONFIGURATION(ExifInterface.TAG_COMPONENTS_CONFIGURATION, Type.STRING, 0x9101, IFD_EXIF, TYPE_UNDEFINED, true),
+    COMPRESSED_BITS_PER_PIXEL(ExifInterface.TAG_COMPRESSED_BITS_PER_PIXEL, Type.DOUBLE, 0x9102, IFD_EXIF, TYPE_RATIONAL, true),
+    CONTRAST(ExifInterface.TAG_CONTRAST, Type.INT, 0xA408, IFD_EXIF, TYPE_SHORT, true),
+    CUSTOM_RENDERED(ExifInterface.TAG_CUSTOM_RENDERED, Type.INT, 0xA401, IFD_EXIF, TYPE_SHORT, true),
+    DATETIME_DIGITIZED(ExifInterface.TAG_DATETIME_DIGITIZED, Type.STRING, 0x9004, IFD_EXIF, TYPE_ASCII, true),
+    DATETIME_ORIGINAL(ExifInterface.TAG_DATETIME_ORIGINAL, Type.STRING, 0x9003, IFD_EXIF, TYPE_ASCII, true),
+    DEVICE_SETTING_DESCRIPTION(ExifInterface.TAG_DEVICE_SETTING_DESCRIPTION, Type.STRING, 0xA40B, IFD_EXIF, TYPE_UNDEFINED, true),
+    DIGITAL_ZOOM_RATIO(ExifInterface.TAG_DIGITAL_ZOOM_RATIO, Type.DOUBLE, 0xA404, IFD_EXIF, TYPE_RATIONAL, true),
+    EXIF_VERSION(ExifInterface.TAG_EXIF_VERSION, Type.STRING, 0x9000, IFD_EXIF, TYPE_UNDEFINED, true),
+    EXPOSURE_BIAS_VALUE(ExifInterface.TAG_EXPOSURE_BIAS_VALUE, Type.DOUBLE, 0x9204, IFD_EXIF, TYPE_SRATIONAL, true),
+    EXPOSURE_INDEX(ExifInterface.TAG_EXPOSURE_INDEX, Type.DOUBLE, 0xA215, IFD_EXIF, TYPE_RATIONAL, true),
+    EXPOSURE_MODE(ExifInterface.TAG_EXPOSURE_MODE, Type.INT, 0xA402, IFD_EXIF, TYPE_SHORT, true),
+    EXPOSURE_PROGRAM(ExifInterface.TAG_EXPOSURE_PROGRAM, Type.INT, 0x8822, IFD_EXIF, TYPE_SHORT, true),
+    EXPOSURE_TIME(ExifInterface.TAG_EXPOSURE_TIME, Type.DOUBLE, 0x829A, IFD_EXIF, TYPE_RATIONAL, true),
+    F_NUMBER(ExifInterface.TAG_F_NUMBER, Type.DOUBLE, 0x829D, IFD_EXIF, TYPE_RATIONAL, true),
+    FILE_SOURCE(ExifInterface.TAG_FILE_SOURCE, Type.STRING, 0xA300, IFD_EXIF, TYPE_UNDEFINED, true),
+    FLASH(ExifInterface.TAG_FLASH, Type.INT, 0x9209, IFD_EXIF, TYPE_SHORT, true),
+    FLASH_ENERGY(ExifInterface.TAG_FLASH_ENERGY, Type.DOUBLE, 0xA20B, IFD_EXIF, TYPE_RATIONAL, true),
+    FLASHPIX_VERSION(ExifInterface.TAG_FLASHPIX_VERSION, Type.STRING, 0xA000, IFD_EXIF, TYPE_UNDEFINED, true),
+    FOCAL_LENGTH(ExifInterface.TAG_FOCAL_LENGTH, Type.DOUBLE, 0x920A, IFD_EXIF, TYPE_RATIONAL, true),
+    FOCAL_LENGTH_IN_35MM_FILM(ExifInterface.TAG_FOCAL_LENGTH_IN_35MM_FILM, Type.INT, 0xA405, IFD_EXIF, TYPE_SHORT, true),
+    FOCAL_PLANE_RESOLUTION_UNIT(ExifInterface.TAG_FOCAL_PLANE_RESOLUTION_UNIT, Type.INT, 0xA210, IFD_EXIF, TYPE_SHORT, true),
+    FOCAL_PLANE_X_RESOLUTION(ExifInterface.TAG_FOCAL_PLANE_X_RESOLUTION, Type.DOUBLE, 0xA20E, IFD_EXIF, TYPE_RATIONAL, true),
+    FOCAL_PLANE_Y_RESOLUTION(ExifInterface.TAG_FOCAL_PLANE_Y_RESOLUTION, Type.DOUBLE, 0xA20F, IFD_EXIF, TYPE_RATIONAL, true),
+    GAIN_CONTROL(ExifInterface.TAG_GAIN_CONTROL, Type.INT, 0xA407, IFD_EXIF, TYPE_SHORT, true),
+    ISO_SPEED_RATINGS(ExifInterface.TAG_ISO_SPEED_RATINGS, Type.INT, 0x8827, IFD_EXIF, TYPE_SHORT, true),
+    IMAGE_UNIQUE_ID(ExifInterface.TAG_IMAGE_UNIQUE_ID, Type.STRING, 0xA420, IFD_EXIF, TYPE_ASCII, true),
+    LIGHT_SOURCE(ExifInterface.TAG_LIGHT_SOURCE, Type.INT, 0x9208, IFD_EXIF, TYPE_SHORT, true),
+    MAKER_NOTE(ExifInterface.TAG_MAKER_NOTE, Type.STRING, 0x927C, IFD_EXIF, TYPE_UNDEFINED, true),
+    MAX_APERTURE_VALUE(ExifInterface.TAG_MAX_APERTURE_VALUE, Type.DOUBLE, 0x9205, IFD_EXIF, TYPE_RATIONAL, true),
+    METERING_MODE(ExifInterface.TAG_METERING_MODE, Type.INT, 0x9207, IFD_EXIF, TYPE_SHORT, true),
+    NEW_SUBFILE_TYPE(ExifInterface.TAG_NEW_SUBFILE_TYPE, Type.INT, 0x00FE, IFD_PRIMARY, TYPE_LONG, true),
+    OECF(ExifInterface.TAG_OECF, Type.STRING, 0x8828, IFD_EXIF, TYPE_UNDEFINED, true),
+    PIXEL_X_DIMENSION(ExifInterface.TAG_PIXEL_X_DIMENSION, Type.INT, 0xA002, IFD_EXIF, TYPE_LONG, true),
+    PIXEL_Y_DIMENSION(ExifInterface.TAG_PIXEL_Y_DIMENSION, Type.INT, 0xA003, IFD_EXIF, TYPE_LONG, true),
+    RELATED_SOUND_FILE(ExifInterface.TAG_RELATED_SOUND_FILE, Type.STRING, 0xA004, IFD_EXIF, TYPE_ASCII, true),
+    SATURATION(ExifInterface.TAG_SATURATION, Type.INT, 0xA409, IFD_EXIF, TYPE_SHORT, true),
+    SCENE_CAPTURE_TYPE(ExifInterface.TAG_SCENE_CAPTURE_TYPE, Type.INT, 0xA406, IFD_EXIF, TYPE_SHORT, true),
+    SCENE_TYPE(ExifInterface.TAG_SCENE_TYPE, Type.STRING, 0xA301, IFD_EXIF, TYPE_UNDEFINED, true),
+    SENSING_METHOD(ExifInterface.TAG_SENSING_METHOD, Type.INT, 0xA217, IFD_EXIF, TYPE_SHORT, true),
+    SHARPNESS(ExifInterface.TAG_SHARPNESS, Type.INT, 0xA40A, IFD_EXIF, TYPE_SHORT, true),
+    SHUTTER_SPEED_VALUE(ExifInterface.TAG_SHUTTER_SPEED_VALUE, Type.DOUBLE, 0x9201, IFD_EXIF, TYPE_SRATIONAL, true),
+    SPATIAL_FREQUENCY_RESPONSE(ExifInterface.TAG_SPATIAL_FREQUENCY_RESPONSE, Type.STRING, 0xA20C, IFD_EXIF, TYPE_UNDEFINED, true),
+    SPECTRAL_SENSITIVITY(ExifInterface.TAG_SPECTRAL_SENSITIVITY, Type.STRING, 0x8824, IFD_EXIF, TYPE_ASCII, true),
+    SUBFILE_TYPE(ExifInterface.TAG_SUBFILE_TYPE, Type.INT, 0x00FF, IFD_PRIMARY, TYPE_SHORT, true),
+    SUBSEC_TIME(ExifInterface.TAG_SUBSEC_TIME, Type.STRING, 0x9290, IFD_EXIF, TYPE_ASCII, true),
+    SUBSEC_TIME_DIGITIZED(ExifInterface.TAG_SUBSEC_TIME_DIGITIZED, Type.STRING, 0x9292, IFD_EXIF, TYPE_ASCII, true),
+    SUBSEC_TIME_ORIGINAL(ExifInterface.TAG_SUBSEC_TIME_ORIGINAL, Type.STRING, 0x9291, IFD_EXIF, TYPE_ASCII, true),
+    SUBJECT_AREA(ExifInterface.TAG_SUBJECT_AREA, Type.INT, 0x9214, IFD_EXIF, TYPE_SHORT, true),
+    SUBJECT_DISTANCE(ExifInterface.TAG_SUBJECT_DISTANCE, Type.DOUBLE, 0x9206, IFD_EXIF, TYPE_RATIONAL, true),
+    SUBJECT_DISTANCE_RANGE(ExifInterface.TAG_SUBJECT_DISTANCE_RANGE, Type.INT, 0xA40C, IFD_EXIF, TYPE_SHORT, true),
+    SUBJECT_LOCATION(ExifInterface.TAG_SUBJECT_LOCATION, Type.INT, 0xA214, IFD_EXIF, TYPE_SHORT, true),
+    USER_COMMENT(ExifInterface.TAG_USER_COMMENT, Type.STRING, 0x9286, IFD_EXIF, TYPE_UNDEFINED, true),
+    WHITE_BALANCE(ExifInterface.TAG_WHITE_BALANCE, Type.INT, 0xA403, IFD_EXIF, TYPE_SHORT, true),
+    GPS_ALTITUDE_REF(ExifInterface.TAG_GPS_ALTITUDE_REF, Type.INT, 0x0005, IFD_GPS, TYPE_BYTE, true),
+    GPS_AREA_INFORMATION(ExifInterface.TAG_GPS_AREA_INFORMATION, Type.STRING, 0x001C, IFD_GPS, TYPE_UNDEFINED, true),
+    GPS_DOP(ExifInterface.TAG_GPS_DOP, Type.DOUBLE, 0x000B, IFD_GPS, TYPE_RATIONAL, true),
+    GPS_DATESTAMP(ExifInterface.TAG_GPS_DATESTAMP, Type.STRING, 0x001D, IFD_GPS, TYPE_ASCII, true),
+    GPS_DEST_BEARING(ExifInterface.TAG_GPS_DEST_BEARING, Type.DOUBLE, 0x0018, IFD_GPS, TYPE_RATIONAL, true),
+    GPS_DEST_BEARING_REF(ExifInterface.TAG_GPS_DEST_BEARING_REF, Type.STRING, 0x0017, IFD_GPS, TYPE_ASCII, true),
+    GPS_DEST_DISTANCE(ExifInterface.TAG_GPS_DEST_DISTANCE, Type.DOUBLE, 0x001A, IFD_GPS, TYPE_RATIONAL, true),
+    GPS_DEST_DISTANCE_REF(ExifInterface.TAG_GPS_DEST_DISTANCE_REF, Type.STRING, 0x0019, IFD_GPS, TYPE_ASCII, true),
+    GPS_DEST_LATITUDE(ExifInterface.TAG_GPS_DEST_LATITUDE, Type.DOUBLE, 0x0014, IFD_GPS, TYPE_RATIONAL, true),
+    GPS_DEST_LATITUDE_REF(ExifInterface.TAG_GPS_DEST_LATITUDE_REF, Type.STRING, 0x0013, IFD_GPS, TYPE_ASCII, true),
+    GPS_DEST_LONGITUDE(ExifInterface.TAG_GPS_DEST_LONGITUDE, Type.DOUBLE, 0x0016, IFD_GPS, TYPE_RATIONAL, true),
+    GPS_DEST_LONGITUDE_REF(ExifInterface.TAG_GPS_DEST_LONGITUDE_REF, Type.STRING, 0x0015, IFD_GPS, TYPE_ASCII, true),
+    GPS_DIFFERENTIAL(ExifInterface.TAG_GPS_DIFFERENTIAL, Type.INT, 0x001E, IFD_GPS, TYPE_SHORT, true),
+    GPS_IMG_DIRECTION(ExifInterface.TAG_GPS_IMG_DIRECTION, Type.DOUBLE, 0x0011, IFD_GPS, TYPE_RATIONAL, true),
+    GPS_IMG_DIRECTION_REF(ExifInterface.TAG_GPS_IMG_DIRECTION_REF, Type.STRING, 0x0010, IFD_GPS, TYPE_ASCII, true),
+    GPS_LATITUDE_REF(ExifInterface.TAG_GPS_LATITUDE_REF, Type.STRING, 0x0001, IFD_GPS, TYPE_ASCII, true),
+    GPS_LONGITUDE_REF(ExifInterface.TAG_GPS_LONGITUDE_REF, Type.STRING, 0x0003, IFD_GPS, TYPE_ASCII, true),
+    GPS_MAP_DATUM(ExifInterface.TAG_GPS_MAP_DATUM, Type.STRING, 0x0012, IFD_GPS, TYPE_ASCII, true),
+    GPS_MEASURE_MODE(ExifInterface.TAG_GPS_MEASURE_MODE, Type.STRING, 0x000A, IFD_GPS, TYPE_ASCII, true),
+    GPS_PROCESSING_METHOD(ExifInterface.TAG_GPS_PROCESSING_METHOD, Type.STRING, 0x001B, IFD_GPS, TYPE_UNDEFINED, true),
+    GPS_SATELLITES(ExifInterface.TAG_GPS_SATELLITES, Type.STRING, 0x0008, IFD_GPS, TYPE_ASCII, true),
+    GPS_SPEED(ExifInterface.TAG_GPS_SPEED, Type.DOUBLE, 0x000D, IFD_GPS, TYPE_RATIONAL, true),
+    GPS_SPEED_REF(ExifInterface.TAG_GPS_SPEED_REF, Type.STRING, 0x000C, IFD_GPS, TYPE_ASCII, true),
+    GPS_STATUS(ExifInterface.TAG_GPS_STATUS, Type.STRING, 0x0009, IFD_GPS, TYPE_ASCII, true),
+    GPS_TIMESTAMP(ExifInterface.TAG_GPS_TIMESTAMP, Type.STRING, 0x0007, IFD_GPS, TYPE_RATIONAL, true),
+    GPS_TRACK(ExifInterface.TAG_GPS_TRACK, Type.DOUBLE, 0x000F, IFD_GPS, TYPE_RATIONAL, true),
+    GPS_TRACK_REF(ExifInterface.TAG_GPS_TRACK_REF, Type.STRING, 0x000E, IFD_GPS, TYPE_ASCII, true),
+    GPS_VERSION_ID(ExifInterface.TAG_GPS_VERSION_ID, Type.STRING, 0x0000, IFD_GPS, TYPE_BYTE, true),
+    INTEROPERABILITY_INDEX(ExifInterface.TAG_INTEROPERABILITY_INDEX, Type.STRING, 0x0001, IFD_INTEROP, TYPE_ASCII, true),
+    THUMBNAIL_IMAGE_LENGTH(ExifInterface.TAG_THUMBNAIL_IMAGE_LENGTH, Type.INT, 0x0101, IFD_THUMBNAIL, TYPE_LONG, false),
+    THUMBNAIL_IMAGE_WIDTH(ExifInterface.TAG_THUMBNAIL_IMAGE_WIDTH, Type.INT, 0x0100, IFD_THUMBNAIL, TYPE_LONG, false),
+    DNG_VERSION(ExifInterface.TAG_DNG_VERSION, Type.INT, 0xC612, IFD_PRIMARY, TYPE_BYTE, false),
+    DEFAULT_CROP_SIZE(ExifInterface.TAG_DEFAULT_CROP_SIZE, Type.INT, 0xC620, IFD_PRIMARY, TYPE_LONG, false),
+    ORF_PREVIEW_IMAGE_START(ExifInterface.TAG_ORF_PREVIEW_IMAGE_START, Type.INT),
+    ORF_PREVIEW_IMAGE_LENGTH(ExifInterface.TAG_ORF_PREVIEW_IMAGE_LENGTH, Type.INT),
+    ORF_ASPECT_FRAME(ExifInterface.TAG_ORF_ASPECT_FRAME, Type.INT),
+    RW2_SENSOR_BOTTOM_BORDER(ExifInterface.TAG_RW2_SENSOR_BOTTOM_BORDER, Type.INT),
+    RW2_SENSOR_LEFT_BORDER(ExifInterface.TAG_RW2_SENSOR_LEFT_BORDER, Type.INT),
+    RW2_SENSOR_RIGHT_BORDER(ExifInterface.TAG_RW2_SENSOR_RIGHT_BORDER, Type.INT),
+    RW2_SENSOR_TOP_BORDER(ExifInterface.TAG_RW2_SENSOR_TOP_BORDER, Type.INT),
+    RW2_ISO(ExifInterface.TAG_RW2_ISO, Type.INT),
+    GPS_LATITUDE(ExifInterface.TAG_GPS_LATITUDE, Type.COORDINATE, 0x0002, IFD_GPS, TYPE_RATIONAL, true),
+    GPS_LONGITUDE(ExifInterface.TAG_GPS_LONGITUDE, Type.COORDINATE, 0x0004, IFD_GPS, TYPE_RATIONAL, true),
+    GPS_ALTITUDE(ExifInterface.TAG_GPS_ALTITUDE, Type.COORDINATE, 0x0006, IFD_GPS, TYPE_RATIONAL, true);
+
+    /** How a tag's value is represented on the JS side. */
+    public enum Type {
+        STRING,
+        INT,
+        DOUBLE,
+        /** GPS position, exchanged as decimal degrees / meters rather than per tag. */
+        COORDINATE
+    }
+
+    private static final Map<String, ExifTag> BY_NAME = new HashMap<>();
+    private static final Map<Integer, ExifTag> BY_LOCATION = new HashMap<>();
+
+    static {
+        for (ExifTag tag : values()) {
+            BY_NAME.put(tag.tagName, tag);
+            if (tag.ifd >= 0) {
+                BY_LOCATION.put(location(tag.ifd, tag.id), tag);
+            }
+        }
+    }
+
+    /** Tag name as used by {@link ExifInterface}. */
+    public final String tagName;
+    public final Type type;
+    final int id;
+    final int ifd;
+    final int tiffType;
+    final boolean writable;
+
+    ExifTag(String name, Type type) {
+        this(name, type, -1, -1, 0, false);
+    }
+
+    ExifTag(String name, Type type, int id, int ifd, int tiffType, boolean writable) {
+        this.tagName = name;
+        this.type = type;
+        this.id = id;
+        this.ifd = ifd;
+        this.tiffType = tiffType;
+        this.writable = writable;
+    }
+
+    /**
+     * @return the tag called {@code name}, or null if it is not a tag we exchange with JS.
+     */
+    public static ExifTag forName(String name) {
+        return BY_NAME.get(name);
+    }
+
+    static ExifTag forLocation(int ifd, int id) {
+        return BY_LOCATION.get(location(ifd, id));
+    }
+
+    private static int location(int ifd, int id) {
+        return (ifd << 16) | id;
+    }
+}
@@ -10,381 +10,430 @@ import android.util.Base64;
 import androidx.exifinterface.media.ExifInterface;
 
 import com.facebook.react.bridge.Arguments;
-import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableMapKeySetIterator;
 import com.facebook.react.bridge.WritableMap;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public class HelperFunctions {
 
   private static final String ERROR_TAG = "E_TAKING_PICTURE_FAILED";
 
-  public static final String[][] exifTags = new String[][]{
-      {"string", ExifInterface.TAG_ARTIST},
-      {"int", ExifInterface.TAG_BITS_PER_SAMPLE},
-      {"int", ExifInterface.TAG_COMPRESSION},
-      {"string", ExifInterface.TAG_COPYRIGHT},
-      {"string", ExifInterface.TAG_DATETIME},
-      {"string", ExifInterface.TAG_IMAGE_DESCRIPTION},
-      {"int", ExifInterface.TAG_IMAGE_LENGTH},
-      {"int", ExifInterface.TAG_IMAGE_WIDTH},
-      {"int", ExifInterface.TAG_JPEG_INTERCHANGE_FORMAT},
-      {"int", ExifInterface.TAG_JPEG_INTERCHANGE_FORMAT_LENGTH},
-      {"string", ExifInterface.TAG_MAKE},
-      {"string", ExifInterface.TAG_MODEL},
-      {"int", ExifInterface.TAG_ORIENTATION},
-      {"int", ExifInterface.TAG_PHOTOMETRIC_INTERPRETATION},
-      {"int", ExifInterface.TAG_PLANAR_CONFIGURATION},
-      {"double", ExifInterface.TAG_PRIMARY_CHROMATICITIES},
-      {"double", ExifInterface.TAG_REFERENCE_BLACK_WHITE},
-      {"int", ExifInterface.TAG_RESOLUTION_UNIT},
-      {"int", ExifInterface.TAG_ROWS_PER_STRIP},
-      {"int", ExifInterface.TAG_SAMPLES_PER_PIXEL},
-      {"string", ExifInterface.TAG_SOFTWARE},
-      {"int", ExifInterface.TAG_STRIP_BYTE_COUNTS},
-      {"int", ExifInterface.TAG_STRIP_OFFSETS},
-      {"int", ExifInterface.TAG_TRANSFER_FUNCTION},
-      {"double", ExifInterface.TAG_WHITE_POINT},
-      {"double", ExifInterface.TAG_X_RESOLUTION},
-      {"double", ExifInterface.TAG_Y_CB_CR_COEFFICIENTS},
-      {"int", ExifInterface.TAG_Y_CB_CR_POSITIONING},
-      {"int", ExifInterface.TAG_Y_CB_CR_SUB_SAMPLING},
-      {"double", ExifInterface.TAG_Y_RESOLUTION},
-      {"double", ExifInterface.TAG_APERTURE_VALUE},
-      {"double", ExifInterface.TAG_BRIGHTNESS_VALUE},
-      {"string", ExifInterface.TAG_CFA_PATTERN},
-      {"int", ExifInterface.TAG_COLOR_SPACE},
-      {"string", ExifInterface.TAG_COMPONENTS_CONFIGURATION},
-      {"double", ExifInterface.TAG_COMPRESSED_BITS_PER_PIXEL},
-      {"int", ExifInterface.TAG_CONTRAST},
-      {"int", ExifInterface.TAG_CUSTOM_RENDERED},
-      {"string", ExifInterface.TAG_DATETIME_DIGITIZED},
-      {"string", ExifInterface.TAG_DATETIME_ORIGINAL},
-      {"string", ExifInterface.TAG_DEVICE_SETTING_DESCRIPTION},
-      {"double", ExifInterface.TAG_DIGITAL_ZOOM_RATIO},
-      {"string", ExifInterface.TAG_EXIF_VERSION},
-      {"double", ExifInterface.TAG_EXPOSURE_BIAS_VALUE},
-      {"double", ExifInterface.TAG_EXPOSURE_INDEX},
-      {"int", ExifInterface.TAG_EXPOSURE_MODE},
-      {"int", ExifInterface.TAG_EXPOSURE_PROGRAM},
-      {"double", ExifInterface.TAG_EXPOSURE_TIME},
-      {"double", ExifInterface.TAG_F_NUMBER},
-      {"string", ExifInterface.TAG_FILE_SOURCE},
-      {"int", ExifInterface.TAG_FLASH},
-      {"double", ExifInterface.TAG_FLASH_ENERGY},
-      {"string", ExifInterface.TAG_FLASHPIX_VERSION},
-      {"double", ExifInterface.TAG_FOCAL_LENGTH},
-      {"int", ExifInterface.TAG_FOCAL_LENGTH_IN_35MM_FILM},
-      {"int", ExifInterface.TAG_FOCAL_PLANE_RESOLUTION_UNIT},
-      {"double", ExifInterface.TAG_FOCAL_PLANE_X_RESOLUTION},
-      {"double", ExifInterface.TAG_FOCAL_PLANE_Y_RESOLUTION},
-      {"int", ExifInterface.TAG_GAIN_CONTROL},
-      {"int", ExifInterface.TAG_ISO_SPEED_RATINGS},
-      {"string", ExifInterface.TAG_IMAGE_UNIQUE_ID},
-      {"int", ExifInterface.TAG_LIGHT_SOURCE},
-      {"string", ExifInterface.TAG_MAKER_NOTE},
-      {"double", ExifInterface.TAG_MAX_APERTURE_VALUE},
-      {"int", ExifInterface.TAG_METERING_MODE},
-      {"int", ExifInterface.TAG_NEW_SUBFILE_TYPE},
-      {"string", ExifInterface.TAG_OECF},
-      {"int", ExifInterface.TAG_PIXEL_X_DIMENSION},
-      {"int", ExifInterface.TAG_PIXEL_Y_DIMENSION},
-      {"string", ExifInterface.TAG_RELATED_SOUND_FILE},
-      {"int", ExifInterface.TAG_SATURATION},
-      {"int", ExifInterface.TAG_SCENE_CAPTURE_TYPE},
-      {"string", ExifInterface.TAG_SCENE_TYPE},
-      {"int", ExifInterface.TAG_SENSING_METHOD},
-      {"int", ExifInterface.TAG_SHARPNESS},
-      {"double", ExifInterface.TAG_SHUTTER_SPEED_VALUE},
-      {"string", ExifInterface.TAG_SPATIAL_FREQUENCY_RESPONSE},
-      {"string", ExifInterface.TAG_SPECTRAL_SENSITIVITY},
-      {"int", ExifInterface.TAG_SUBFILE_TYPE},
-      {"string", ExifInterface.TAG_SUBSEC_TIME},
-      {"string", ExifInterface.TAG_SUBSEC_TIME_DIGITIZED},
-      {"string", ExifInterface.TAG_SUBSEC_TIME_ORIGINAL},
-      {"int", ExifInterface.TAG_SUBJECT_AREA},
-      {"double", ExifInterface.TAG_SUBJECT_DISTANCE},
-      {"int", ExifInterface.TAG_SUBJECT_DISTANCE_RANGE},
-      {"int", ExifInterface.TAG_SUBJECT_LOCATION},
-      {"string", ExifInterface.TAG_USER_COMMENT},
-      {"int", ExifInterface.TAG_WHITE_BALANCE},
-      {"int", ExifInterface.TAG_GPS_ALTITUDE_REF},
-      {"string", ExifInterface.TAG_GPS_AREA_INFORMATION},
-      {"double", ExifInterface.TAG_GPS_DOP},
-      {"string", ExifInterface.TAG_GPS_DATESTAMP},
-      {"double", ExifInterface.TAG_GPS_DEST_BEARING},
-      {"string", ExifInterface.TAG_GPS_DEST_BEARING_REF},
-      {"double", ExifInterface.TAG_GPS_DEST_DISTANCE},
-      {"string", ExifInterface.TAG_GPS_DEST_DISTANCE_REF},
-      {"double", ExifInterface.TAG_GPS_DEST_LATITUDE},
-      {"string", ExifInterface.TAG_GPS_DEST_LATITUDE_REF},
-      {"double", ExifInterface.TAG_GPS_DEST_LONGITUDE},
-      {"string", ExifInterface.TAG_GPS_DEST_LONGITUDE_REF},
-      {"int", ExifInterface.TAG_GPS_DIFFERENTIAL},
-      {"double", ExifInterface.TAG_GPS_IMG_DIRECTION},
-      {"string", ExifInterface.TAG_GPS_IMG_DIRECTION_REF},
-      {"string", ExifInterface.TAG_GPS_LATITUDE_REF},
-      {"string", ExifInterface.TAG_GPS_LONGITUDE_REF},
-      {"string", ExifInterface.TAG_GPS_MAP_DATUM},
-      {"string", ExifInterface.TAG_GPS_MEASURE_MODE},
-      {"string", ExifInterface.TAG_GPS_PROCESSING_METHOD},
-      {"string", ExifInterface.TAG_GPS_SATELLITES},
-      {"double", ExifInterface.TAG_GPS_SPEED},
-      {"string", ExifInterface.TAG_GPS_SPEED_REF},
-      {"string", ExifInterface.TAG_GPS_STATUS},
-      {"string", ExifInterface.TAG_GPS_TIMESTAMP},
-      {"double", ExifInterface.TAG_GPS_TRACK},
-      {"string", ExifInterface.TAG_GPS_TRACK_REF},
-      {"string", ExifInterface.TAG_GPS_VERSION_ID},
-      {"string", ExifInterface.TAG_INTEROPERABILITY_INDEX},
-      {"int", ExifInterface.TAG_THUMBNAIL_IMAGE_LENGTH},
-      {"int", ExifInterface.TAG_THUMBNAIL_IMAGE_WIDTH},
-      {"int", ExifInterface.TAG_DNG_VERSION},
-      {"int", ExifInterface.TAG_DEFAULT_CROP_SIZE},
-      {"int", ExifInterface.TAG_ORF_PREVIEW_IMAGE_START},
-      {"int", ExifInterface.TAG_ORF_PREVIEW_IMAGE_LENGTH},
-      {"int", ExifInterface.TAG_ORF_ASPECT_FRAME},
-      {"int", ExifInterface.TAG_RW2_SENSOR_BOTTOM_BORDER},
-      {"int", ExifInterface.TAG_RW2_SENSOR_LEFT_BORDER},
-      {"int", ExifInterface.TAG_RW2_SENSOR_RIGHT_BORDER},
-      {"int", ExifInterface.TAG_RW2_SENSOR_TOP_BORDER},
-      {"int", ExifInterface.TAG_RW2_ISO},
-  };
-
-  // Run all events on native modules queue thread since they might be fired
-  // from other non RN threads.
+  private static final int MIN_ENCODE_BUFFER_SIZE = 64 * 1024;
+
+  // largest possible APP1 segment, marker included
+  private static final int MAX_EXIF_SEGMENT_SIZE = 0xFFFF + 2;
+
+  // a multiple of 3 so chunks encode without padding and can be laid end to end
+  private static final int BASE64_CHUNK_SIZE = 3 * 16 * 1024;
 
   // Utilities
 
-  public static WritableMap takePictureHelper(byte[] mImageData, Promise mPromise, ReadableMap mOptions, File mCacheDirectory, int mDeviceOrientation, int mSoftwareRotation) {
-    WritableMap response = Arguments.createMap();
-    ByteArrayInputStream inputStream = null;
-    ExifInterface exifInterface = null;
-    WritableMap exifData = null;
-    ReadableMap exifExtraData = null;
-    Bitmap mBitmap = BitmapFactory.decodeByteArray(mImageData, 0, mImageData.length);
+  // The picture processing stages below run in order on a PictureJob, possibly on different
+  // threads. Each stage rejects the job's promise itself and returns false when it fails.
 
-    boolean exifOrientationFixed = false;
+  // this replaces the skipProcessing flag, we will process only if needed, and in
+  // an orderly manner, so that skipProcessing is the default behaviour if no options are given
+  // and this behaves more like the iOS version.
+  // We will load all data lazily only when needed.
 
-    response.putInt("deviceOrientation", mDeviceOrientation);
-    response.putInt("pictureOrientation", mOptions.hasKey("orientation") ? mOptions.getInt("orientation") : mDeviceOrientation);
+  public static boolean decodePicture(PictureJob job) {
+    ReadableMap mOptions = job.mOptions;
 
+    job.mResponse.putInt("deviceOrientation", job.mDeviceOrientation);
+    job.mResponse.putInt("pictureOrientation", mOptions.hasKey("orientation") ? mOptions.getInt("orientation") : job.mDeviceOrientation);
 
-    try{
-      // this replaces the skipProcessing flag, we will process only if needed, and in
-      // an orderly manner, so that skipProcessing is the default behaviour if no options are given
-      // and this behaves more like the iOS version.
-      // We will load all data lazily only when needed.
+    try {
+      job.mPlan = planTransforms(job);
+    }
+    catch (IOException e) {
+      job.mPromise.reject(ERROR_TAG, "An unknown I/O exception has occurred.", e);
+      e.printStackTrace();
+      return false;
+    }
 
-      // this should not incur in any overhead if not read/used
-      inputStream = new ByteArrayInputStream(mImageData);
+    // the original JPEG goes through untouched unless a pixel operation needs it decoded
+    if (!job.mPlan.needsDecode()) {
+      return true;
+    }
 
-      if (mSoftwareRotation != 0) {
-        mBitmap = getRotatedBitmap(mBitmap, mSoftwareRotation);
-      }
+    // when resizing, let the decoder drop whole powers of two instead of
+    // decoding at full resolution only to scale it down afterwards
+    BitmapFactory.Options decodeOptions = new BitmapFactory.Options();
+    if (job.mPlan.mTargetWidth > 0) {
+      decodeOptions.inSampleSize = getSampleSize(job, job.mPlan.mTargetWidth);
+    }
+    job.mBitmap = BitmapFactory.decodeByteArray(job.mImageData, job.mImageOffset, job.mImageLength, decodeOptions);
+    return true;
+  }
+
+  /**
+   * In "exif" orientation mode rotation and mirroring are recorded in the EXIF orientation tag,
+   * which is lossless and never touches pixels. "pixels" mode rotates and flips the bitmap
+   * itself, for consumers that ignore EXIF. Without an explicit orientationMode, fixOrientation
+   * and mirrorImage ask for upright or flipped pixels as they always have, so only those
+   * captures default to "pixels".
+   */
+  public static boolean isExifOrientationMode(ReadableMap options) {
+    if (options.hasKey("orientationMode")) {
+      return !"pixels".equals(options.getString("orientationMode"));
+    }
+    return !(options.hasKey("fixOrientation") && options.getBoolean("fixOrientation"))
+        && !(options.hasKey("mirrorImage") && options.getBoolean("mirrorImage"));
+  }
 
-      // Rotate the bitmap to the proper orientation if requested
-      if(mOptions.hasKey("fixOrientation") && mOptions.getBoolean("fixOrientation")){
-        exifInterface = new ExifInterface(inputStream);
+  private static PictureTransformPlan planTransforms(PictureJob job) throws IOException {
+    ReadableMap options = job.mOptions;
+    int targetWidth = options.hasKey("width") ? options.getInt("width") : 0;
+    boolean mirrorImage = options.hasKey("mirrorImage") && options.getBoolean("mirrorImage");
+
+    // once we re-encode anyway, orientation costs nothing extra to apply to the pixels. The tag
+    // also needs a saved file to live in, base64 alone cannot carry it.
+    boolean changesOrientation = job.mSoftwareRotation != 0 || mirrorImage;
+    boolean base64Only = options.hasKey("doNotSave") && options.getBoolean("doNotSave")
+        && options.hasKey("base64") && options.getBoolean("base64");
+    if (isExifOrientationMode(options) && targetWidth == 0 && !(changesOrientation && base64Only)) {
+      return new PictureTransformPlan(0, 0, false, job.mSoftwareRotation, mirrorImage);
+    }
+    return new PictureTransformPlan(getPixelRotation(job), targetWidth, mirrorImage, 0, false);
+  }
 
-        // Get orientation of the image from mImageData via inputStream
-        int orientation = exifInterface.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_UNDEFINED);
+  // clockwise rotation the pixels need: the software rotation plus, with fixOrientation,
+  // whatever the EXIF orientation tag asks for
+  private static int getPixelRotation(PictureJob job) throws IOException {
+    int rotation = job.mSoftwareRotation;
+    if (job.mOptions.hasKey("fixOrientation") && job.mOptions.getBoolean("fixOrientation")) {
+      job.mExifInterface = new ExifInterface(new ByteArrayInputStream(job.mImageData, job.mImageOffset, job.mImageLength));
 
-        if(orientation != ExifInterface.ORIENTATION_UNDEFINED && getImageRotation(orientation) != 0) {
-          int angle = getImageRotation(orientation);
-          mBitmap = getRotatedBitmap(mBitmap, angle);
-          exifOrientationFixed = true;
-        }
+      // Get orientation of the image from mImageData
+      int orientation = job.mExifInterface.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_UNDEFINED);
+
+      if(orientation != ExifInterface.ORIENTATION_UNDEFINED && getImageRotation(orientation) != 0) {
+        rotation += getImageRotation(orientation);
+        job.mExifOrientationFixed = true;
       }
+    }
+    return rotation;
+  }
+
+  // largest power of two that still decodes at least targetWidth pixels across,
+  // measured after rotation
+  private static int getSampleSize(PictureJob job, int targetWidth) {
+    BitmapFactory.Options bounds = new BitmapFactory.Options();
+    bounds.inJustDecodeBounds = true;
+    BitmapFactory.decodeByteArray(job.mImageData, job.mImageOffset, job.mImageLength, bounds);
+
+    int sourceWidth = job.mPlan.mPixelRotation % 180 == 0 ? bounds.outWidth : bounds.outHeight;
+    int sampleSize = 1;
+    while (sourceWidth / (sampleSize * 2) >= targetWidth) {
+      sampleSize *= 2;
+    }
+    return sampleSize;
+  }
 
-      if (mOptions.hasKey("width")) {
-        mBitmap = resizeBitmap(mBitmap, mOptions.getInt("width"));
+  public static boolean transformPicture(PictureJob job) {
+    ReadableMap mOptions = job.mOptions;
+    ByteArrayInputStream inputStream = null;
+
+    try{
+      // this should not incur in any overhead if not read/used
+      inputStream = new ByteArrayInputStream(job.mImageData, job.mImageOffset, job.mImageLength);
+
+      PictureTransformPlan plan = job.mPlan;
+
+      // in exif mode only the orientation tag is adjusted. Viewers that
+      // honor it (including fixOrientation consumers) will show the picture upright.
+      if (plan.changesOrientationTag()) {
+        job.mExifInterface = new ExifInterface(inputStream);
+        if (plan.mTagRotation != 0) {
+          job.mExifInterface.rotate(plan.mTagRotation);
+        }
+        if (plan.mTagMirror) {
+          job.mExifInterface.flipHorizontally();
+        }
+        job.mExifOrientation = job.mExifInterface.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
       }
 
-      if (mOptions.hasKey("mirrorImage") && mOptions.getBoolean("mirrorImage")) {
-        mBitmap = flipHorizontally(mBitmap);
+      // Rotate, resize and mirror the bitmap in a single pass
+      if (job.mBitmap != null) {
+        job.mBitmap = transformBitmap(job.mBitmap, plan.mPixelRotation, plan.mTargetWidth, plan.mPixelMirror);
       }
 
 
       // EXIF code - we will adjust exif info later if we manipulated the bitmap
-      boolean writeExifToResponse = mOptions.hasKey("exif") && mOptions.getBoolean("exif");
+      job.mWriteExifToResponse = mOptions.hasKey("exif") && mOptions.getBoolean("exif");
 
       // default to true if not provided so it is consistent with iOS and with what happens if no
       // processing is done and the image is saved as is.
-      boolean writeExifToFile = true;
+      job.mWriteExifToFile = true;
 
       if (mOptions.hasKey("writeExif")) {
         switch (mOptions.getType("writeExif")) {
           case Boolean:
-            writeExifToFile = mOptions.getBoolean("writeExif");
+            job.mWriteExifToFile = mOptions.getBoolean("writeExif");
             break;
           case Map:
-            exifExtraData = mOptions.getMap("writeExif");
-            writeExifToFile = true;
+            job.mExifExtraData = mOptions.getMap("writeExif");
+            job.mWriteExifToFile = true;
             break;
         }
       }
 
       // Read Exif data if needed
-      if (writeExifToResponse || writeExifToFile) {
+      if (job.mWriteExifToResponse || job.mWriteExifToFile) {
 
         // if we manipulated the image, or need to add extra data, or need to add it to the response,
         // then we need to load the actual exif data.
         // Otherwise we can just use w/e exif data we have right now in our byte array
-        if(mBitmap != null || exifExtraData != null || writeExifToResponse){
-          if(exifInterface == null){
-            exifInterface = new ExifInterface(inputStream);
+        if(job.mBitmap != null || job.mExifExtraData != null || job.mWriteExifToResponse || job.mExifOrientation != 0){
+          // parsed once here and reused when saving
+          job.mExifWriter = new ExifSegmentWriter(job.mImageData, job.mImageOffset, job.mImageLength);
+          if (job.mExifOrientation != 0) {
+            job.mExifWriter.setAttribute(ExifInterface.TAG_ORIENTATION, String.valueOf(job.mExifOrientation));
           }
-          exifData = HelperFunctions.getExifData(exifInterface);
+          job.mExifData = HelperFunctions.getExifData(job.mExifWriter);
 
-          if(exifExtraData != null){
-            exifData.merge(exifExtraData);
+          if(job.mExifExtraData != null){
+            job.mExifData.merge(job.mExifExtraData);
           }
         }
 
         // if we did anything to the bitmap, adjust exif
-        if(mBitmap != null){
-          exifData.putInt("width", mBitmap.getWidth());
-          exifData.putInt("height", mBitmap.getHeight());
+        if(job.mBitmap != null){
+          job.mExifData.putInt("width", job.mBitmap.getWidth());
+          job.mExifData.putInt("height", job.mBitmap.getHeight());
 
-          if(exifOrientationFixed){
-            exifData.putInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+          if(job.mExifOrientationFixed){
+            job.mExifData.putInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
           }
         }
 
         // Write Exif data to the response if requested
-        if (writeExifToResponse) {
+        if (job.mWriteExifToResponse) {
           final WritableMap exifDataCopy = Arguments.createMap();
-          exifDataCopy.merge(exifData);
-          response.putMap("exif", exifDataCopy);
+          exifDataCopy.merge(job.mExifData);
+          job.mResponse.putMap("exif", exifDataCopy);
         }
       }
-
-
-
-      // final processing
-      // Based on whether or not we loaded the full bitmap into memory, final processing differs
-      if(mBitmap == null){
-        // set response dimensions. If we haven't read our bitmap, get it efficiently
-        // without loading the actual bitmap into memory
-        BitmapFactory.Options options = new BitmapFactory.Options();
-        options.inJustDecodeBounds = true;
-        BitmapFactory.decodeByteArray(mImageData, 0, mImageData.length, options);
-        if(options != null){
-          response.putInt("width", options.outWidth);
-          response.putInt("height", options.outHeight);
+      return true;
+    }
+    catch (IOException e) {
+      job.mPromise.reject(ERROR_TAG, "An unknown I/O exception has occurred.", e);
+      e.printStackTrace();
+    }
+    finally {
+      try {
+        if (inputStream != null) {
+          inputStream.close();
         }
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+    return false;
+  }
 
+  public static boolean encodePicture(PictureJob job) {
+    // Based on whether or not we loaded the full bitmap into memory, final processing differs
+    if(job.mBitmap == null){
+      // set response dimensions. If we haven't read our bitmap, get it efficiently
+      // without loading the actual bitmap into memory
+      BitmapFactory.Options options = new BitmapFactory.Options();
+      options.inJustDecodeBounds = true;
+      BitmapFactory.decodeByteArray(job.mImageData, job.mImageOffset, job.mImageLength, options);
+      job.mResponse.putInt("width", options.outWidth);
+      job.mResponse.putInt("height", options.outHeight);
+      return true;
+    }
 
-        // save to file if requested
-        if (!mOptions.hasKey("doNotSave") || !mOptions.getBoolean("doNotSave")) {
-
-          // Prepare file output
-          File imageFile = new File(getImagePath(mOptions, mCacheDirectory));
-
-          imageFile.createNewFile();
-
-          FileOutputStream fOut = new FileOutputStream(imageFile);
+    // get response dimensions right from the bitmap if we have it
+    job.mResponse.putInt("width", job.mBitmap.getWidth());
+    job.mResponse.putInt("height", job.mBitmap.getHeight());
+
+    // Cache compressed image in imageStream
+    // a JPEG rarely needs more than half a byte per pixel; the stream grows if it does
+    job.mImageStream = new PooledByteArrayOutputStream(job.mOutputBufferPool,
+        Math.max(MIN_ENCODE_BUFFER_SIZE, job.mBitmap.getWidth() * job.mBitmap.getHeight() / 2));
+    if (!job.mBitmap.compress(Bitmap.CompressFormat.JPEG, getQuality(job.mOptions), job.mImageStream)) {
+      job.mPromise.reject(ERROR_TAG, "Could not compress image to JPEG");
+      return false;
+    }
 
-          // Save byte array (it is already a JPEG)
-          fOut.write(mImageData);
-          fOut.flush();
-          fOut.close();
+    // the pixels are not needed past this point, free them before the job queues for disk
+    job.mBitmap.recycle();
+    job.mBitmap = null;
+    return true;
+  }
 
-          // update exif data if needed.
-          // Since we didn't modify the image, we only update if we have extra exif info
-          if (writeExifToFile && exifExtraData != null) {
-            ExifInterface fileExifInterface = new ExifInterface(imageFile.getAbsolutePath());
-            HelperFunctions.setExifData(fileExifInterface, exifExtraData);
-            fileExifInterface.saveAttributes();
-          }
-          else if (!writeExifToFile){
-            // if we were requested to NOT store exif, we actually need to
-            // clear the exif tags
-            ExifInterface fileExifInterface = new ExifInterface(imageFile.getAbsolutePath());
-            HelperFunctions.clearExifData(fileExifInterface);
-            fileExifInterface.saveAttributes();
-          }
-          // else: exif is unmodified, no need to update anything
+  public static boolean persistPicture(PictureJob job) {
+    ReadableMap mOptions = job.mOptions;
+    boolean doNotSave = mOptions.hasKey("doNotSave") && mOptions.getBoolean("doNotSave");
+    boolean base64 = mOptions.hasKey("base64") && mOptions.getBoolean("base64");
 
-          // Return file system URI
-          String fileUri = Uri.fromFile(imageFile).toString();
-          response.putString("uri", fileUri);
-        }
+    if (doNotSave && !base64) {
+      return true;
+    }
 
-        if (mOptions.hasKey("base64") && mOptions.getBoolean("base64")) {
-          response.putString("base64", Base64.encodeToString(mImageData, Base64.NO_WRAP));
+    try {
+      ExifSegmentWriter exifWriter = buildExifWriter(job);
+
+      // base64 needs the final bytes in memory anyway, so splice them once
+      // into a buffer and save that
+      if (exifWriter != null && base64) {
+        int sourceLength = job.mImageStream != null ? job.mImageStream.size() : job.mImageLength;
+        PooledByteArrayOutputStream splicedStream = new PooledByteArrayOutputStream(job.mOutputBufferPool, sourceLength + MAX_EXIF_SEGMENT_SIZE);
+        exifWriter.writeTo(splicedStream);
+        if (job.mImageStream != null) {
+          job.mImageStream.release();
         }
-
+        job.mImageStream = splicedStream;
+        exifWriter = null;
       }
-      else{
-        // get response dimensions right from the bitmap if we have it
-        response.putInt("width", mBitmap.getWidth());
-        response.putInt("height", mBitmap.getHeight());
-
-        // Cache compressed image in imageStream
-        ByteArrayOutputStream imageStream = new ByteArrayOutputStream();
-        if (!mBitmap.compress(Bitmap.CompressFormat.JPEG, getQuality(mOptions), imageStream)) {
-          mPromise.reject(ERROR_TAG, "Could not compress image to JPEG");
-          return null;
-        }
-
-        // Write compressed image to file in cache directory unless otherwise specified
-        if (!mOptions.hasKey("doNotSave") || !mOptions.getBoolean("doNotSave")) {
-          String filePath = writeStreamToFile(imageStream, mOptions, mCacheDirectory);
-
-          // since we lost any exif data on bitmap creation, we only need
-          // to add it if requested
-          if (writeExifToFile && exifData != null) {
-            ExifInterface fileExifInterface = new ExifInterface(filePath);
-            HelperFunctions.setExifData(fileExifInterface, exifData);
-            fileExifInterface.saveAttributes();
-          }
-          File imageFile = new File(filePath);
-          String fileUri = Uri.fromFile(imageFile).toString();
-          response.putString("uri", fileUri);
-        }
 
-        // Write base64-encoded image to the response if requested
-        if (mOptions.hasKey("base64") && mOptions.getBoolean("base64")) {
-          response.putString("base64", Base64.encodeToString(imageStream.toByteArray(), Base64.NO_WRAP));
-        }
+      // save to file if requested
+      if (doNotSave) {
+        return true;
+      }
 
+      // Prepare file output. The picture, exif included, is written in a single
+      // gathering write straight from the buffers we already hold.
+      ByteBuffer[] imageBuffers;
+      if (exifWriter != null) {
+        imageBuffers = exifWriter.toBuffers();
+      }
+      else if (job.mImageStream != null) {
+        imageBuffers = new ByteBuffer[]{ByteBuffer.wrap(job.mImageStream.getBuffer(), job.mImageStream.getOffset(), job.mImageStream.size())};
+      }
+      else {
+        // Save byte array (it is already a JPEG)
+        imageBuffers = new ByteBuffer[]{ByteBuffer.wrap(job.mImageData, job.mImageOffset, job.mImageLength)};
       }
 
-      return response;
+      File imageFile = new File(getImagePath(mOptions, job.mCaptureStore));
+      PictureFileWriter.write(imageFile, imageBuffers,
+          mOptions.hasKey("fsync") ? mOptions.getString("fsync") : PictureFileWriter.SYNC_NONE,
+          mOptions.hasKey("preallocate") && mOptions.getBoolean("preallocate"));
+      if (job.mCaptureStore.contains(imageFile)) {
+        job.mCaptureStore.onFileAdded(imageFile);
+      }
 
+      // Return file system URI
+      String fileUri = Uri.fromFile(imageFile).toString();
+      job.mResponse.putString("uri", fileUri);
+      return true;
     }
     catch (Resources.NotFoundException e) {
-      mPromise.reject(ERROR_TAG, "Documents directory of the app could not be found.", e);
+      job.mPromise.reject(ERROR_TAG, "Documents directory of the app could not be found.", e);
       e.printStackTrace();
     }
     catch (IOException e) {
-      mPromise.reject(ERROR_TAG, "An unknown I/O exception has occurred.", e);
+      job.mPromise.reject(ERROR_TAG, "An unknown I/O exception has occurred.", e);
       e.printStackTrace();
     }
-    finally {
-      try {
-        if (inputStream != null) {
-          inputStream.close();
-        }
-      } catch (IOException e) {
-        e.printStackTrace();
+    return false;
+  }
+
+  // Works out the exif the output should carry, or returns null when the
+  // picture bytes can be used exactly as they are.
+  private static ExifSegmentWriter buildExifWriter(PictureJob job) throws IOException {
+    if (job.mImageStream != null) {
+      // since we lost any exif data on bitmap creation, we only need
+      // to add it if requested
+      if (!job.mWriteExifToFile || job.mExifData == null) {
+        return null;
+      }
+      ExifSegmentWriter exifWriter = new ExifSegmentWriter(job.mImageStream.getBuffer(), job.mImageStream.getOffset(), job.mImageStream.size());
+      HelperFunctions.setExifData(exifWriter, job.mExifData);
+      return exifWriter;
+    }
+
+    // Since we didn't modify the pixels, we only update if we have extra exif info,
+    // an orientation change recorded in exif mode, or need to strip exif
+    boolean orientationChanged = job.mExifOrientation != 0;
+    if (job.mWriteExifToFile && job.mExifExtraData == null && !orientationChanged) {
+      // exif is unmodified, no need to update anything
+      return null;
+    }
+
+    ExifSegmentWriter exifWriter = job.mExifWriter != null
+        ? job.mExifWriter
+        : new ExifSegmentWriter(job.mImageData, job.mImageOffset, job.mImageLength);
+    if (!job.mWriteExifToFile) {
+      // if we were requested to NOT store exif, we actually need to
+      // clear the exif tags
+      exifWriter.clear();
+    }
+
+    // the orientation tag is the only record of how the picture is rotated, always keep it
+    if (orientationChanged) {
+      exifWriter.setAttribute(ExifInterface.TAG_ORIENTATION, String.valueOf(job.mExifOrientation));
+    }
+    if (job.mWriteExifToFile && job.mExifExtraData != null) {
+      HelperFunctions.setExifData(exifWriter, job.mExifExtraData);
+    }
+    return exifWriter;
+  }
+
+  public static WritableMap buildPictureResponse(PictureJob job) {
+    // Write base64-encoded image to the response if requested
+    if (job.mOptions.hasKey("base64") && job.mOptions.getBoolean("base64")) {
+      if(job.mImageStream == null){
+        job.mResponse.putString("base64", encodeBase64(job.mImageData, job.mImageOffset, job.mImageLength));
+      }
+      else{
+        // encode straight from the stream's buffer rather than a toByteArray() copy
+        job.mResponse.putString("base64", encodeBase64(job.mImageStream.getBuffer(), job.mImageStream.getOffset(), job.mImageStream.size()));
       }
     }
+    return job.mResponse;
+  }
 
-    return null;
+  /**
+   * NO_WRAP Base64 of {@code length} bytes at {@code offset}. Encodes in small chunks straight
+   * into the final char array, rather than letting {@link Base64#encodeToString} build a
+   * full-size byte array and then copy it into the String.
+   */
+  static String encodeBase64(byte[] data, int offset, int length) {
+    char[] encoded = new char[(length + 2) / 3 * 4];
+    int out = 0;
+    for (int chunkOffset = 0; chunkOffset < length; chunkOffset += BASE64_CHUNK_SIZE) {
+      int chunkLength = Math.min(BASE64_CHUNK_SIZE, length - chunkOffset);
+      byte[] chunk = Base64.encode(data, offset + chunkOffset, chunkLength, Base64.NO_WRAP);
+      for (byte b : chunk) {
+        encoded[out++] = (char) b;
+      }
+    }
+    return new String(encoded);
   }
 
-  private static Bitmap getRotatedBitmap(Bitmap source, int angle) {
+  /**
+   * Applies rotation, scaling to {@code targetWidth} (0 to keep the size) and mirroring with one
+   * matrix, so only a single output bitmap is allocated. The source is recycled if replaced.
+   */
+  private static Bitmap transformBitmap(Bitmap source, int rotation, int targetWidth, boolean mirror) {
     Matrix matrix = new Matrix();
-    matrix.postRotate(angle);
-    return Bitmap.createBitmap(source, 0, 0, source.getWidth(), source.getHeight(), matrix, true);
+    matrix.postRotate(rotation);
+    if (targetWidth > 0) {
+      int rotatedWidth = rotation % 180 == 0 ? source.getWidth() : source.getHeight();
+      float scaleRatio = (float) targetWidth / (float) rotatedWidth;
+      matrix.postScale(scaleRatio, scaleRatio);
+    }
+    if (mirror) {
+      matrix.postScale(-1.0f, 1.0f);
+    }
+    if (matrix.isIdentity()) {
+      return source;
+    }
+
+    Bitmap result = Bitmap.createBitmap(source, 0, 0, source.getWidth(), source.getHeight(), matrix, true);
+    if (result != source) {
+      source.recycle();
+    }
+    return result;
   }
 
   private static int getImageRotation(int orientation) {
@@ -403,81 +452,38 @@ public class HelperFunctions {
     return rotationDegrees;
   }
 
-  private static Bitmap resizeBitmap(Bitmap bm, int newWidth) {
-    int width = bm.getWidth();
-    int height = bm.getHeight();
-    float scaleRatio = (float) newWidth / (float) width;
-
-    return Bitmap.createScaledBitmap(bm, newWidth, (int) (height * scaleRatio), true);
-  }
-
-  private static Bitmap flipHorizontally(Bitmap source) {
-    Matrix matrix = new Matrix();
-    matrix.preScale(-1.0f, 1.0f);
-    return Bitmap.createBitmap(source, 0, 0, source.getWidth(), source.getHeight(), matrix, true);
-  }
-
-  private static String getImagePath(ReadableMap mOptions, File mCacheDirectory) throws IOException{
+  private static String getImagePath(ReadableMap mOptions, CaptureStore mCaptureStore) throws IOException{
     if(mOptions.hasKey("path")){
       return mOptions.getString("path");
     }
-    return RNFileUtils.getOutputFilePath(mCacheDirectory, ".jpg");
+    return mCaptureStore.newFilePath(".jpg");
   }
 
-  private static String writeStreamToFile(ByteArrayOutputStream imageDataStream, ReadableMap mOptions, File mChacheDirectory) throws IOException {
-    String outputPath = null;
-    IOException exception = null;
-    FileOutputStream fileOutputStream = null;
-
-    try {
-      outputPath = getImagePath(mOptions, mChacheDirectory);
-      fileOutputStream = new FileOutputStream(outputPath);
-      imageDataStream.writeTo(fileOutputStream);
-    } catch (IOException e) {
-      e.printStackTrace();
-      exception = e;
-    } finally {
-      try {
-        if (fileOutputStream != null) {
-          fileOutputStream.close();
-        }
-      } catch (IOException e) {
-        e.printStackTrace();
+  // reads only the tags present in the picture, typed per ExifTag
+  public static WritableMap getExifData(ExifSegmentWriter exifWriter) {
+    final WritableMap exifMap = Arguments.createMap();
+    exifWriter.readTags(new ExifSegmentWriter.TagReader() {
+      @Override
+      public void onString(ExifTag tag, String value) {
+        exifMap.putString(tag.tagName, value);
       }
-    }
-
-    if (exception != null) {
-      throw exception;
-    }
 
-    return outputPath;
-  }
+      @Override
+      public void onInt(ExifTag tag, int value) {
+        exifMap.putInt(tag.tagName, value);
+      }
 
-  public static WritableMap getExifData(ExifInterface exifInterface) {
-    WritableMap exifMap = Arguments.createMap();
-    for (String[] tagInfo : exifTags) {
-      String name = tagInfo[1];
-      if (exifInterface.getAttribute(name) != null) {
-        String type = tagInfo[0];
-        switch (type) {
-          case "string":
-            exifMap.putString(name, exifInterface.getAttribute(name));
-            break;
-          case "int":
-            exifMap.putInt(name, exifInterface.getAttributeInt(name, 0));
-            break;
-          case "double":
-            exifMap.putDouble(name, exifInterface.getAttributeDouble(name, 0));
-            break;
-        }
+      @Override
+      public void onDouble(ExifTag tag, double value) {
+        exifMap.putDouble(tag.tagName, value);
       }
-    }
+    });
 
-    double[] latLong = exifInterface.getLatLong();
+    double[] latLong = exifWriter.getLatLong();
     if (latLong != null) {
       exifMap.putDouble(ExifInterface.TAG_GPS_LATITUDE, latLong[0]);
       exifMap.putDouble(ExifInterface.TAG_GPS_LONGITUDE, latLong[1]);
-      exifMap.putDouble(ExifInterface.TAG_GPS_ALTITUDE, exifInterface.getAltitude(0));
+      exifMap.putDouble(ExifInterface.TAG_GPS_ALTITUDE, exifWriter.getAltitude(0));
     }
 
     return exifMap;
@@ -487,45 +493,37 @@ public class HelperFunctions {
     return (int) (mOptions.getDouble("quality") * 100);
   }
 
-  public static void setExifData(ExifInterface exifInterface, ReadableMap exifMap) {
-    for (String[] tagInfo : exifTags) {
-      String name = tagInfo[1];
-      if (exifMap.hasKey(name)) {
-        String type = tagInfo[0];
-        switch (type) {
-          case "string":
-            exifInterface.setAttribute(name, exifMap.getString(name));
-            break;
-          case "int":
-            exifInterface.setAttribute(name, Integer.toString(exifMap.getInt(name)));
-            exifMap.getInt(name);
-            break;
-          case "double":
-            exifInterface.setAttribute(name, Double.toString(exifMap.getDouble(name)));
-            exifMap.getDouble(name);
-            break;
-        }
+  // writes only the keys present in exifMap, ignoring anything that is not a known tag
+  public static void setExifData(ExifSegmentWriter exifWriter, ReadableMap exifMap) {
+    ReadableMapKeySetIterator iterator = exifMap.keySetIterator();
+    while (iterator.hasNextKey()) {
+      String name = iterator.nextKey();
+      ExifTag tag = ExifTag.forName(name);
+      if (tag == null || exifMap.isNull(name)) {
+        continue;
+      }
+      switch (tag.type) {
+        case STRING:
+          exifWriter.setAttribute(tag, exifMap.getString(name));
+          break;
+        case INT:
+          exifWriter.setAttribute(tag, Integer.toString(exifMap.getInt(name)));
+          break;
+        case DOUBLE:
+          exifWriter.setAttribute(tag, Double.toString(exifMap.getDouble(name)));
+          break;
+        case COORDINATE:
+          // set as a whole below
+          break;
       }
     }
 
     if (exifMap.hasKey(ExifInterface.TAG_GPS_LATITUDE) && exifMap.hasKey(ExifInterface.TAG_GPS_LONGITUDE)) {
-      exifInterface.setLatLong(exifMap.getDouble(ExifInterface.TAG_GPS_LATITUDE),
-                               exifMap.getDouble(ExifInterface.TAG_GPS_LONGITUDE));
+      exifWriter.setLatLong(exifMap.getDouble(ExifInterface.TAG_GPS_LATITUDE),
+                            exifMap.getDouble(ExifInterface.TAG_GPS_LONGITUDE));
     }
     if(exifMap.hasKey(ExifInterface.TAG_GPS_ALTITUDE)){
-      exifInterface.setAltitude(exifMap.getDouble(ExifInterface.TAG_GPS_ALTITUDE));
+      exifWriter.setAltitude(exifMap.getDouble(ExifInterface.TAG_GPS_ALTITUDE));
     }
   }
-
-  // clears exif values in place
-  public static void clearExifData(ExifInterface exifInterface) {
-    for (String[] tagInfo : exifTags) {
-      exifInterface.setAttribute(tagInfo[1], null);
-    }
-
-    // these are not part of our tag list, remove by hand
-    exifInterface.setAttribute(ExifInterface.TAG_GPS_LATITUDE, null);
-    exifInterface.setAttribute(ExifInterface.TAG_GPS_LONGITUDE, null);
-    exifInterface.setAttribute(ExifInterface.TAG_GPS_ALTITUDE, null);
-  }
 }
@@ -0,0 +1,103 @@
+package com.rncamerademo.nativemodules.camera.utils;
+
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes a picture to disk through a {@link FileChannel}, gathering the given buffers in one
+ * call without copying them into a stream first.
+ *
+ * The data goes to a temporary file next to the target that is renamed into place once complete,
+ * so a crash or a full disk never leaves a truncated picture behind under the final name.
+ */
+public class PictureFileWriter {
+
+    /** Leave flushing to the kernel. */
+    public static final String SYNC_NONE = "none";
+    /** Flush the file contents before renaming. */
+    public static final String SYNC_DATA = "data";
+    /** Flush contents and metadata, and the directory entry after renaming. */
+    public static final String SYNC_FULL = "full";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * @param syncPolicy  One of {@link #SYNC_NONE}, {@link #SYNC_DATA} or {@link #SYNC_FULL}.
+     * @param preallocate Reserve the whole file up front so the filesystem can lay it out in one
+     *                    extent and a full disk fails before anything is written.
+     */
+    public static void write(File target, ByteBuffer[] buffers, String syncPolicy, boolean preallocate) throws IOException {
+        File tempFile = new File(target.getParentFile(), "." + target.getName() + TEMP_SUFFIX);
+        boolean written = false;
+        FileOutputStream outputStream = new FileOutputStream(tempFile);
+        try {
+            FileChannel channel = outputStream.getChannel();
+            long size = 0;
+            for (ByteBuffer buffer : buffers) {
+                size += buffer.remaining();
+            }
+            if (preallocate) {
+                preallocate(outputStream.getFD(), size);
+            }
+
+            while (size > 0) {
+                size -= channel.write(buffers);
+            }
+
+            if (SYNC_DATA.equals(syncPolicy)) {
+                channel.force(false);
+            } else if (SYNC_FULL.equals(syncPolicy)) {
+                channel.force(true);
+            }
+            written = true;
+        } finally {
+            outputStream.close();
+            if (!written) {
+                tempFile.delete();
+            }
+        }
+
+        try {
+            Os.rename(tempFile.getAbsolutePath(), target.getAbsolutePath());
+        } catch (ErrnoException e) {
+            tempFile.delete();
+            throw new IOException("Could not move the picture into place.", e);
+        }
+
+        if (SYNC_FULL.equals(syncPolicy)) {
+            syncDirectory(target.getParentFile());
+        }
+    }
+
+    private static void preallocate(FileDescriptor fd, long size) {
+        try {
+            Os.posix_fallocate(fd, 0, size);
+        } catch (ErrnoException e) {
+            // not every filesystem supports it (e.g. FAT on sdcards), the write still works
+        }
+    }
+
+    private static void syncDirectory(File directory) throws IOException {
+        if (directory == null) {
+            return;
+        }
+        try {
+            FileDescriptor fd = Os.open(directory.getAbsolutePath(), OsConstants.O_RDONLY, 0);
+            try {
+                Os.fsync(fd);
+            } finally {
+                Os.close(fd);
+            }
+        } catch (ErrnoException e) {
+            throw new IOException("Could not sync " + directory, e);
+        }
+    }
+}
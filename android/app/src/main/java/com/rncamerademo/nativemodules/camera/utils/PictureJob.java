@@ -0,0 +1,99 @@
+package com.rncamerademo.nativemodules.camera.utils;
+
+import android.graphics.Bitmap;
+
+import androidx.exifinterface.media.ExifInterface;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+
+import java.nio.ByteBuffer;
+
+/**
+ * State of one captured picture while it moves through the processing stages in
+ * {@link HelperFunctions}. Each stage reads what the previous ones left behind, so a job is only
+ * ever touched by one stage at a time.
+ */
+public class PictureJob {
+
+  // the JPEG lives in a pooled buffer that is usually larger than the image itself,
+  // so always address it through offset/length
+  final byte[] mImageData;
+  final int mImageOffset;
+  final int mImageLength;
+
+  final Promise mPromise;
+  final ReadableMap mOptions;
+  final CaptureStore mCaptureStore;
+  final int mDeviceOrientation;
+  final int mSoftwareRotation;
+  final ByteBufferPool mOutputBufferPool;
+
+  final WritableMap mResponse = Arguments.createMap();
+
+  PictureTransformPlan mPlan;
+  Bitmap mBitmap;
+  ExifInterface mExifInterface;
+  ExifSegmentWriter mExifWriter;
+  WritableMap mExifData;
+  ReadableMap mExifExtraData;
+  boolean mExifOrientationFixed = false;
+  // orientation tag to write in exif mode, 0 when the tag is left as captured
+  int mExifOrientation = 0;
+  boolean mWriteExifToResponse = false;
+  boolean mWriteExifToFile = true;
+  PooledByteArrayOutputStream mImageStream;
+
+  private final Runnable mOnFinished;
+  private boolean mFinished = false;
+
+  /**
+   * @param imageBuffer JPEG data. Must stay valid until {@link #finish()} runs {@code onFinished}.
+   * @param captureStore Where the picture is saved when the options give no explicit path.
+   * @param outputBufferPool Source of the buffers re-encoded JPEGs are written into.
+   * @param onFinished  Run once the job no longer needs {@code imageBuffer}.
+   */
+  public PictureJob(ByteBuffer imageBuffer, Promise promise, ReadableMap options, CaptureStore captureStore,
+                    int deviceOrientation, int softwareRotation, ByteBufferPool outputBufferPool,
+                    Runnable onFinished) {
+    mImageData = imageBuffer.array();
+    mImageOffset = imageBuffer.arrayOffset() + imageBuffer.position();
+    mImageLength = imageBuffer.remaining();
+    mPromise = promise;
+    mOptions = options;
+    mCaptureStore = captureStore;
+    mDeviceOrientation = deviceOrientation;
+    mSoftwareRotation = softwareRotation;
+    mOutputBufferPool = outputBufferPool;
+    mOnFinished = onFinished;
+  }
+
+  public Promise getPromise() {
+    return mPromise;
+  }
+
+  public ReadableMap getOptions() {
+    return mOptions;
+  }
+
+  /**
+   * Releases everything the job still holds. Safe to call more than once.
+   */
+  public void finish() {
+    if (mFinished) {
+      return;
+    }
+    mFinished = true;
+    if (mBitmap != null) {
+      mBitmap.recycle();
+      mBitmap = null;
+    }
+    if (mImageStream != null) {
+      mImageStream.release();
+      mImageStream = null;
+    }
+    mOnFinished.run();
+  }
+}
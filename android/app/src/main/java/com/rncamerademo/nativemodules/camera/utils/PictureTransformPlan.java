@@ -0,0 +1,35 @@
+package com.rncamerademo.nativemodules.camera.utils;
+
+/**
+ * What has to happen to a captured JPEG, worked out from the picture options before anything is
+ * decoded. Pixel operations force a decode and re-encode; orientation tag changes only rewrite
+ * EXIF. A plan with neither passes the original bytes through untouched.
+ */
+class PictureTransformPlan {
+
+  /** Clockwise degrees to rotate the decoded pixels by. */
+  final int mPixelRotation;
+  /** Width to scale the (rotated) pixels to, 0 to keep the size. */
+  final int mTargetWidth;
+  final boolean mPixelMirror;
+
+  /** Clockwise degrees to add to the EXIF orientation tag. */
+  final int mTagRotation;
+  final boolean mTagMirror;
+
+  PictureTransformPlan(int pixelRotation, int targetWidth, boolean pixelMirror, int tagRotation, boolean tagMirror) {
+    mPixelRotation = pixelRotation % 360;
+    mTargetWidth = targetWidth;
+    mPixelMirror = pixelMirror;
+    mTagRotation = tagRotation % 360;
+    mTagMirror = tagMirror;
+  }
+
+  boolean needsDecode() {
+    return mPixelRotation != 0 || mTargetWidth > 0 || mPixelMirror;
+  }
+
+  boolean changesOrientationTag() {
+    return mTagRotation != 0 || mTagMirror;
+  }
+}
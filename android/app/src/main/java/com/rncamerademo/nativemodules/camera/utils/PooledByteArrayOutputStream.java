@@ -0,0 +1,76 @@
+package com.rncamerademo.nativemodules.camera.utils;
+
+import java.io.OutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Output stream that writes into buffers borrowed from a {@link ByteBufferPool} and exposes its
+ * backing array, so callers can hand the written bytes to Base64 or a file without the extra
+ * copy {@link java.io.ByteArrayOutputStream#toByteArray()} makes.
+ *
+ * {@link #release()} must be called once the bytes are no longer needed.
+ */
+public class PooledByteArrayOutputStream extends OutputStream {
+
+    private final ByteBufferPool mPool;
+    private ByteBuffer mBuffer;
+    private int mCount;
+
+    public PooledByteArrayOutputStream(ByteBufferPool pool, int initialCapacity) {
+        mPool = pool;
+        mBuffer = pool.acquire(initialCapacity);
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(mCount + 1);
+        mBuffer.array()[mBuffer.arrayOffset() + mCount++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensureCapacity(mCount + len);
+        System.arraycopy(b, off, mBuffer.array(), mBuffer.arrayOffset() + mCount, len);
+        mCount += len;
+    }
+
+    /**
+     * Backing array. Valid bytes start at {@link #getOffset()} and span {@link #size()} bytes.
+     */
+    public byte[] getBuffer() {
+        return mBuffer.array();
+    }
+
+    public int getOffset() {
+        return mBuffer.arrayOffset();
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(mBuffer.array(), mBuffer.arrayOffset(), mCount);
+    }
+
+    /**
+     * Returns the backing buffer to the pool. The stream must not be used afterwards.
+     */
+    public void release() {
+        if (mBuffer != null) {
+            mPool.release(mBuffer);
+            mBuffer = null;
+        }
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity <= mBuffer.capacity()) {
+            return;
+        }
+        ByteBuffer grown = mPool.acquire(Math.max(minCapacity, mBuffer.capacity() * 2));
+        System.arraycopy(mBuffer.array(), mBuffer.arrayOffset(), grown.array(), grown.arrayOffset(), mCount);
+        mPool.release(mBuffer);
+        mBuffer = grown;
+    }
+}
@@ -11,9 +11,11 @@ import java.io.File;
 public class ScopedContext {
 
     private File cacheDirectory = null;
+    private CaptureStore captureStore = null;
 
     public ScopedContext(Context context) {
         createCacheDirectory(context);
+        captureStore = new CaptureStore(cacheDirectory);
     }
 
     public void createCacheDirectory(Context context) {
@@ -24,4 +26,8 @@ public class ScopedContext {
         return cacheDirectory;
     }
 
+    public CaptureStore getCaptureStore() {
+        return captureStore;
+    }
+
 }
@@ -0,0 +1,76 @@
+package com.rncamerademo.nativemodules.camera;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class AnalysisSizeSelectorTest {
+
+    private static final AspectRatio RATIO_4_3 = AspectRatio.of(4, 3);
+    private static final AspectRatio RATIO_16_9 = AspectRatio.of(16, 9);
+
+    private SizeMap mSizes;
+    private AnalysisSizeSelector mSelector;
+
+    @Before
+    public void setUp() {
+        mSizes = new SizeMap();
+        mSizes.add(new Size(320, 240));
+        mSizes.add(new Size(640, 480));
+        mSizes.add(new Size(1280, 960));
+        mSizes.add(new Size(4032, 3024));
+        mSizes.add(new Size(640, 360));
+        mSizes.add(new Size(1280, 720));
+        mSizes.add(new Size(1920, 1080));
+        mSelector = new AnalysisSizeSelector();
+    }
+
+    @Test
+    public void picksSmallestSizeMeetingMinimum() {
+        mSelector.setMinShortEdge(400);
+
+        assertEquals(new Size(640, 480), mSelector.select(mSizes, RATIO_4_3));
+    }
+
+    @Test
+    public void sizeExactlyAtMinimumQualifies() {
+        mSelector.setMinShortEdge(480);
+
+        assertEquals(new Size(640, 480), mSelector.select(mSizes, RATIO_4_3));
+    }
+
+    @Test
+    public void onlyConsidersSizesOfTheRequestedRatio() {
+        // 640x480 has a 480 short edge too, but is not 16:9
+        mSelector.setMinShortEdge(480);
+
+        assertEquals(new Size(1280, 720), mSelector.select(mSizes, RATIO_16_9));
+    }
+
+    @Test
+    public void measuresTheShortEdgeOfPortraitSizes() {
+        SizeMap portrait = new SizeMap();
+        portrait.add(new Size(360, 640));
+        portrait.add(new Size(720, 1280));
+        mSelector.setMinShortEdge(500);
+
+        assertEquals(new Size(720, 1280), mSelector.select(portrait, AspectRatio.of(9, 16)));
+    }
+
+    @Test
+    public void fallsBackToLargestWhenNothingQualifies() {
+        mSelector.setMinShortEdge(2000);
+
+        assertEquals(new Size(1920, 1080), mSelector.select(mSizes, RATIO_16_9));
+    }
+
+    @Test
+    public void noMinimumUsesLargest() {
+        assertEquals(new Size(4032, 3024), mSelector.select(mSizes, RATIO_4_3));
+
+        mSelector.setMinShortEdge(-1);
+        assertEquals(0, mSelector.getMinShortEdge());
+        assertEquals(new Size(4032, 3024), mSelector.select(mSizes, RATIO_4_3));
+    }
+}
@@ -0,0 +1,127 @@
+package com.rncamerademo.nativemodules.camera.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+public class ByteBufferPoolTest {
+
+    private static final int MB = 1024 * 1024;
+
+    @Test
+    public void acquireRoundsUpToPowerOfTwo() {
+        ByteBufferPool pool = new ByteBufferPool(4, 64L * MB);
+
+        assertEquals(4096, pool.acquire(1).capacity());
+        assertEquals(4096, pool.acquire(4096).capacity());
+        assertEquals(8192, pool.acquire(4097).capacity());
+        assertEquals(4 * MB, pool.acquire(3 * MB + 17).capacity());
+    }
+
+    @Test
+    public void releasedBufferIsReusedCleared() {
+        ByteBufferPool pool = new ByteBufferPool(4, 64L * MB);
+        ByteBuffer buffer = pool.acquire(3 * MB);
+        buffer.put(new byte[100]).flip();
+        pool.release(buffer);
+
+        // a differently sized JPEG that falls in the same bucket gets the same buffer back
+        ByteBuffer reused = pool.acquire(2 * MB + 1);
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(reused.capacity(), reused.limit());
+    }
+
+    @Test
+    public void steadyStateCaptureAllocatesNothing() {
+        ByteBufferPool pool = new ByteBufferPool(4, 64L * MB);
+        int[] jpegSizes = {2 * MB + 10, 3 * MB, 4 * MB - 1, 2 * MB + 512 * 1024};
+        int inFlight = 3;
+
+        // warm up: a burst of captures held at once, as the processing pipeline does
+        Set<ByteBuffer> allocated = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<ByteBuffer> held = new ArrayList<>();
+        for (int i = 0; i < inFlight; i++) {
+            held.add(pool.acquire(jpegSizes[i]));
+        }
+        allocated.addAll(held);
+        for (ByteBuffer buffer : held) {
+            pool.release(buffer);
+        }
+        held.clear();
+
+        for (int round = 0; round < 1000; round++) {
+            for (int i = 0; i < inFlight; i++) {
+                ByteBuffer buffer = pool.acquire(jpegSizes[(round + i) % jpegSizes.length]);
+                assertTrue("capture " + round + " allocated a new buffer", allocated.contains(buffer));
+                held.add(buffer);
+            }
+            for (ByteBuffer buffer : held) {
+                pool.release(buffer);
+            }
+            held.clear();
+        }
+        assertEquals(inFlight, allocated.size());
+    }
+
+    @Test
+    public void releaseRespectsRetentionBudget() {
+        ByteBufferPool pool = new ByteBufferPool(4, 4 * MB);
+        ByteBuffer first = pool.acquire(4 * MB);
+        ByteBuffer second = pool.acquire(4 * MB);
+        pool.release(first);
+        // would retain 8 MB, over the 4 MB budget
+        pool.release(second);
+
+        assertSame(first, pool.acquire(4 * MB));
+        assertNotSame(second, pool.acquire(4 * MB));
+    }
+
+    @Test
+    public void releaseRespectsBuffersPerBucket() {
+        ByteBufferPool pool = new ByteBufferPool(1, 64L * MB);
+        ByteBuffer first = pool.acquire(MB);
+        ByteBuffer second = pool.acquire(MB);
+        pool.release(first);
+        pool.release(second);
+
+        assertSame(first, pool.acquire(MB));
+        ByteBuffer third = pool.acquire(MB);
+        assertNotSame(first, third);
+        assertNotSame(second, third);
+    }
+
+    @Test
+    public void foreignBuffersAreNotPooled() {
+        ByteBufferPool pool = new ByteBufferPool(4, 64L * MB);
+        ByteBuffer odd = ByteBuffer.allocate(5000);
+        ByteBuffer direct = ByteBuffer.allocateDirect(8192);
+        pool.release(odd);
+        pool.release(direct);
+        pool.release(null);
+
+        ByteBuffer acquired = pool.acquire(5000);
+        assertNotSame(odd, acquired);
+        assertNotSame(direct, acquired);
+    }
+
+    @Test
+    public void clearDropsPooledBuffers() {
+        ByteBufferPool pool = new ByteBufferPool(4, 64L * MB);
+        ByteBuffer buffer = pool.acquire(MB);
+        pool.release(buffer);
+        pool.clear();
+
+        assertNotSame(buffer, pool.acquire(MB));
+    }
+}
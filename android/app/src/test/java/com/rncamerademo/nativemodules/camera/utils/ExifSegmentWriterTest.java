@@ -0,0 +1,359 @@
+package com.rncamerademo.nativemodules.camera.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import androidx.exifinterface.media.ExifInterface;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ExifSegmentWriterTest {
+
+    // a DQT-shaped segment, then the scan; the writer stops looking for APP1 at SOS
+    private static final byte[] BODY = {
+            (byte) 0xFF, (byte) 0xDB, 0, 4, 1, 2,
+            (byte) 0xFF, (byte) 0xDA, 0, 4, 0, 0,
+            0x11, 0x22, 0x33,
+            (byte) 0xFF, (byte) 0xD9};
+
+    private static final byte[] THUMBNAIL = {(byte) 0xFF, (byte) 0xD8, 9, 8, 7, (byte) 0xFF, (byte) 0xD9};
+
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TAG_UNKNOWN = 0xC000;
+
+    // marks an IFD1 entry whose value is the thumbnail's offset, filled in by tiff()
+    private static final int THUMBNAIL_OFFSET_VALUE = -1;
+
+    @Test
+    public void roundTripsTypedTags() throws IOException {
+        byte[] input = jpeg(null);
+        ExifSegmentWriter writer = new ExifSegmentWriter(input, 0, input.length);
+        writer.setAttribute(ExifInterface.TAG_ORIENTATION, "6");
+        writer.setAttribute(ExifInterface.TAG_EXPOSURE_TIME, "1/125");
+        writer.setAttribute(ExifInterface.TAG_DATETIME, "2026:10:18 12:34:56");
+        writer.setLatLong(52.5, -13.25);
+        writer.setAltitude(-12.5);
+
+        ExifSegmentWriter read = reparse(writer);
+        Map<ExifTag, Object> tags = readTags(read);
+        assertEquals(6, tags.get(ExifTag.ORIENTATION));
+        assertEquals(1 / 125.0, (Double) tags.get(ExifTag.EXPOSURE_TIME), 1e-9);
+        assertEquals("2026:10:18 12:34:56", tags.get(ExifTag.DATETIME));
+
+        double[] latLong = read.getLatLong();
+        assertNotNull(latLong);
+        assertEquals(52.5, latLong[0], 1e-6);
+        assertEquals(-13.25, latLong[1], 1e-6);
+        assertEquals(-12.5, read.getAltitude(0), 1e-6);
+    }
+
+    @Test
+    public void insertsApp1IntoJpegWithoutOne() throws IOException {
+        byte[] input = jpeg(null);
+        ExifSegmentWriter writer = new ExifSegmentWriter(input, 0, input.length);
+        writer.setAttribute(ExifInterface.TAG_ORIENTATION, "3");
+
+        byte[] output = write(writer);
+        assertEquals((byte) 0xD8, output[1]);
+        assertEquals((byte) 0xE1, output[3]);
+        // the rest of the image is carried over byte for byte
+        assertArrayEquals(BODY, Arrays.copyOfRange(output, output.length - BODY.length, output.length));
+        assertEquals(3, readTags(reparse(writer)).get(ExifTag.ORIENTATION));
+    }
+
+    @Test
+    public void untouchedInputIsWrittenThrough() throws IOException {
+        byte[] input = jpeg(tiff(ByteOrder.BIG_ENDIAN, new int[][]{{TAG_ORIENTATION, 3, 1, 6}}, null, null));
+        ExifSegmentWriter writer = new ExifSegmentWriter(input, 0, input.length);
+
+        assertArrayEquals(input, write(writer));
+        assertEquals(1, writer.toBuffers().length);
+    }
+
+    @Test
+    public void toBuffersMatchesWriteTo() throws IOException {
+        byte[] input = jpeg(tiff(ByteOrder.BIG_ENDIAN, new int[][]{{TAG_ORIENTATION, 3, 1, 1}}, null, null));
+        ExifSegmentWriter writer = new ExifSegmentWriter(input, 0, input.length);
+        writer.setAttribute(ExifInterface.TAG_MAKE, "RNCamera");
+
+        ByteArrayOutputStream gathered = new ByteArrayOutputStream();
+        for (ByteBuffer buffer : writer.toBuffers()) {
+            gathered.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        assertArrayEquals(write(writer), gathered.toByteArray());
+    }
+
+    @Test
+    public void keepsLittleEndianSegmentsLittleEndian() throws IOException {
+        byte[] input = jpeg(tiff(ByteOrder.LITTLE_ENDIAN, new int[][]{{TAG_ORIENTATION, 3, 1, 8}}, null, null));
+        ExifSegmentWriter writer = new ExifSegmentWriter(input, 0, input.length);
+        assertEquals(8, readTags(writer).get(ExifTag.ORIENTATION));
+
+        writer.setAttribute(ExifInterface.TAG_DATETIME, "2026:10:18 00:00:00");
+        byte[] output = write(writer);
+        assertEquals('I', output[tiffStart(output)]);
+
+        Map<ExifTag, Object> tags = readTags(reparse(writer));
+        assertEquals(8, tags.get(ExifTag.ORIENTATION));
+        assertEquals("2026:10:18 00:00:00", tags.get(ExifTag.DATETIME));
+    }
+
+    @Test
+    public void carriesOverThumbnailAndUnknownTags() throws IOException {
+        byte[] input = jpeg(tiff(ByteOrder.LITTLE_ENDIAN,
+                new int[][]{{TAG_ORIENTATION, 3, 1, 1}, {TAG_UNKNOWN, 4, 1, 0x12345678}},
+                new int[][]{
+                        {ExifSegmentWriter.TAG_THUMBNAIL_OFFSET, 4, 1, THUMBNAIL_OFFSET_VALUE},
+                        {ExifSegmentWriter.TAG_THUMBNAIL_LENGTH, 4, 1, THUMBNAIL.length}},
+                THUMBNAIL));
+        ExifSegmentWriter writer = new ExifSegmentWriter(input, 0, input.length);
+        writer.setAttribute(ExifInterface.TAG_ORIENTATION, "6");
+
+        ByteBuffer tiff = tiffOf(write(writer));
+        Map<Integer, Integer> ifd0 = readIfd(tiff, tiff.getInt(4));
+        assertEquals(6, (int) ifd0.get(TAG_ORIENTATION));
+        assertEquals(0x12345678, (int) ifd0.get(TAG_UNKNOWN));
+
+        int ifd1Offset = nextIfdOffset(tiff, tiff.getInt(4));
+        assertTrue(ifd1Offset > 0);
+        Map<Integer, Integer> ifd1 = readIfd(tiff, ifd1Offset);
+        int thumbnailOffset = ifd1.get(ExifSegmentWriter.TAG_THUMBNAIL_OFFSET);
+        int thumbnailLength = ifd1.get(ExifSegmentWriter.TAG_THUMBNAIL_LENGTH);
+        byte[] thumbnail = new byte[thumbnailLength];
+        ((ByteBuffer) tiff.duplicate().position(thumbnailOffset)).get(thumbnail);
+        assertArrayEquals(THUMBNAIL, thumbnail);
+    }
+
+    @Test
+    public void dropsThumbnailWhenSegmentWouldOverflow() throws IOException {
+        byte[] bigThumbnail = new byte[40000];
+        bigThumbnail[0] = (byte) 0xFF;
+        bigThumbnail[1] = (byte) 0xD8;
+        byte[] input = jpeg(tiff(ByteOrder.BIG_ENDIAN,
+                new int[][]{{TAG_ORIENTATION, 3, 1, 1}},
+                new int[][]{
+                        {ExifSegmentWriter.TAG_THUMBNAIL_OFFSET, 4, 1, THUMBNAIL_OFFSET_VALUE},
+                        {ExifSegmentWriter.TAG_THUMBNAIL_LENGTH, 4, 1, bigThumbnail.length}},
+                bigThumbnail));
+        ExifSegmentWriter writer = new ExifSegmentWriter(input, 0, input.length);
+        char[] comment = new char[30000];
+        Arrays.fill(comment, 'x');
+        writer.setAttribute(ExifInterface.TAG_USER_COMMENT, new String(comment));
+
+        ByteBuffer tiff = tiffOf(write(writer));
+        assertTrue(tiff.remaining() <= ExifSegmentWriter.MAX_TIFF_SIZE);
+        assertEquals(0, nextIfdOffset(tiff, tiff.getInt(4)));
+        assertEquals(new String(comment), readTags(reparse(writer)).get(ExifTag.USER_COMMENT));
+    }
+
+    @Test
+    public void failsWhenTagsAloneDoNotFit() throws IOException {
+        byte[] input = jpeg(null);
+        ExifSegmentWriter writer = new ExifSegmentWriter(input, 0, input.length);
+        char[] comment = new char[ExifSegmentWriter.MAX_TIFF_SIZE];
+        Arrays.fill(comment, 'x');
+        writer.setAttribute(ExifInterface.TAG_USER_COMMENT, new String(comment));
+
+        try {
+            writer.toBuffers();
+            fail("an oversized segment was written");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void dropsTruncatedIfd() throws IOException {
+        byte[] tiff = tiff(ByteOrder.BIG_ENDIAN, new int[][]{{TAG_ORIENTATION, 3, 1, 6}}, null, null);
+        // claim far more entries than the segment holds
+        ByteBuffer.wrap(tiff).putShort(8, (short) 50);
+        byte[] input = jpeg(tiff);
+        ExifSegmentWriter writer = new ExifSegmentWriter(input, 0, input.length);
+
+        assertTrue(readTags(writer).isEmpty());
+        assertArrayEquals(jpeg(null), write(writer));
+    }
+
+    @Test
+    public void skipsEntriesWithBogusCountsOrOffsets() throws IOException {
+        byte[] input = jpeg(tiff(ByteOrder.BIG_ENDIAN, new int[][]{
+                // RATIONAL x 0x7FFFFFFF would overflow an int size
+                {0x011A, 5, Integer.MAX_VALUE, 8},
+                // ASCII x 100 pointing past the end of the segment
+                {0x010F, 2, 100, 0x7FFF0000},
+                {TAG_ORIENTATION, 3, 1, 6}},
+                new int[][]{
+                        {ExifSegmentWriter.TAG_THUMBNAIL_OFFSET, 4, 1, THUMBNAIL_OFFSET_VALUE},
+                        // longer than what follows the offset
+                        {ExifSegmentWriter.TAG_THUMBNAIL_LENGTH, 4, 1, 1 << 30}},
+                THUMBNAIL));
+        ExifSegmentWriter writer = new ExifSegmentWriter(input, 0, input.length);
+
+        Map<ExifTag, Object> tags = readTags(writer);
+        assertEquals(6, tags.get(ExifTag.ORIENTATION));
+        assertFalse(tags.containsKey(ExifTag.X_RESOLUTION));
+        assertFalse(tags.containsKey(ExifTag.MAKE));
+
+        writer.setAttribute(ExifInterface.TAG_ORIENTATION, "1");
+        ByteBuffer tiff = tiffOf(write(writer));
+        Map<Integer, Integer> ifd1 = readIfd(tiff, nextIfdOffset(tiff, tiff.getInt(4)));
+        assertEquals(THUMBNAIL.length, (int) ifd1.get(ExifSegmentWriter.TAG_THUMBNAIL_LENGTH));
+    }
+
+    @Test
+    public void clearRemovesApp1() throws IOException {
+        byte[] input = jpeg(tiff(ByteOrder.LITTLE_ENDIAN,
+                new int[][]{{TAG_ORIENTATION, 3, 1, 6}},
+                new int[][]{
+                        {ExifSegmentWriter.TAG_THUMBNAIL_OFFSET, 4, 1, THUMBNAIL_OFFSET_VALUE},
+                        {ExifSegmentWriter.TAG_THUMBNAIL_LENGTH, 4, 1, THUMBNAIL.length}},
+                THUMBNAIL));
+        ExifSegmentWriter writer = new ExifSegmentWriter(input, 0, input.length);
+        writer.clear();
+
+        byte[] output = write(writer);
+        assertArrayEquals(jpeg(null), output);
+        ExifSegmentWriter read = new ExifSegmentWriter(output, 0, output.length);
+        assertTrue(readTags(read).isEmpty());
+        assertNull(read.getLatLong());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsNonJpeg() throws IOException {
+        new ExifSegmentWriter(new byte[]{1, 2, 3, 4}, 0, 4);
+    }
+
+    // Helpers
+
+    private static byte[] write(ExifSegmentWriter writer) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeTo(out);
+        return out.toByteArray();
+    }
+
+    private static ExifSegmentWriter reparse(ExifSegmentWriter writer) throws IOException {
+        byte[] output = write(writer);
+        return new ExifSegmentWriter(output, 0, output.length);
+    }
+
+    private static Map<ExifTag, Object> readTags(ExifSegmentWriter writer) {
+        final Map<ExifTag, Object> tags = new HashMap<>();
+        writer.readTags(new ExifSegmentWriter.TagReader() {
+            @Override
+            public void onString(ExifTag tag, String value) {
+                tags.put(tag, value);
+            }
+
+            @Override
+            public void onInt(ExifTag tag, int value) {
+                tags.put(tag, value);
+            }
+
+            @Override
+            public void onDouble(ExifTag tag, double value) {
+                tags.put(tag, value);
+            }
+        });
+        return tags;
+    }
+
+    // SOI, an APP1 holding tiff if given, then BODY
+    private static byte[] jpeg(byte[] tiff) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xFF);
+        out.write(0xD8);
+        if (tiff != null) {
+            int length = 2 + 6 + tiff.length;
+            out.write(0xFF);
+            out.write(0xE1);
+            out.write(length >> 8);
+            out.write(length & 0xFF);
+            out.write('E');
+            out.write('x');
+            out.write('i');
+            out.write('f');
+            out.write(0);
+            out.write(0);
+            out.write(tiff, 0, tiff.length);
+        }
+        out.write(BODY, 0, BODY.length);
+        return out.toByteArray();
+    }
+
+    /**
+     * Builds a TIFF block with IFD0 and, if given, IFD1 followed by the thumbnail. Entries are
+     * {tag, type, count, value} with the value stored inline.
+     */
+    private static byte[] tiff(ByteOrder order, int[][] ifd0, int[][] ifd1, byte[] thumbnail) {
+        int ifd0Size = 2 + ifd0.length * 12 + 4;
+        int ifd1Offset = 8 + ifd0Size;
+        int thumbnailOffset = ifd1 != null ? ifd1Offset + 2 + ifd1.length * 12 + 4 : ifd1Offset;
+        ByteBuffer buffer = ByteBuffer.allocate(thumbnailOffset + (thumbnail != null ? thumbnail.length : 0)).order(order);
+        byte byteOrder = (byte) (order == ByteOrder.LITTLE_ENDIAN ? 'I' : 'M');
+        buffer.put(byteOrder).put(byteOrder).putShort((short) 42).putInt(8);
+        putIfd(buffer, ifd0, ifd1 != null ? ifd1Offset : 0, thumbnailOffset);
+        if (ifd1 != null) {
+            putIfd(buffer, ifd1, 0, thumbnailOffset);
+        }
+        if (thumbnail != null) {
+            buffer.put(thumbnail);
+        }
+        return buffer.array();
+    }
+
+    private static void putIfd(ByteBuffer buffer, int[][] entries, int next, int thumbnailOffset) {
+        buffer.putShort((short) entries.length);
+        for (int[] entry : entries) {
+            buffer.putShort((short) entry[0]).putShort((short) entry[1]).putInt(entry[2]);
+            int value = entry[3] == THUMBNAIL_OFFSET_VALUE ? thumbnailOffset : entry[3];
+            if (entry[1] == ExifSegmentWriter.TYPE_SHORT && entry[2] == 1) {
+                buffer.putShort((short) value).putShort((short) 0);
+            } else {
+                buffer.putInt(value);
+            }
+        }
+        buffer.putInt(next);
+    }
+
+    private static int tiffStart(byte[] jpeg) {
+        assertEquals((byte) 0xE1, jpeg[3]);
+        return 4 + 2 + 6;
+    }
+
+    private static ByteBuffer tiffOf(byte[] jpeg) {
+        int start = tiffStart(jpeg);
+        int length = ((jpeg[4] & 0xFF) << 8 | (jpeg[5] & 0xFF)) - 2 - 6;
+        ByteBuffer tiff = ByteBuffer.wrap(jpeg, start, length).slice();
+        return tiff.order(tiff.get(0) == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+    }
+
+    // tag -> inline SHORT or LONG value
+    private static Map<Integer, Integer> readIfd(ByteBuffer tiff, int offset) {
+        Map<Integer, Integer> entries = new HashMap<>();
+        int count = tiff.getShort(offset) & 0xFFFF;
+        for (int i = 0; i < count; i++) {
+            int entry = offset + 2 + i * 12;
+            int type = tiff.getShort(entry + 2);
+            int value = type == ExifSegmentWriter.TYPE_SHORT ? tiff.getShort(entry + 8) & 0xFFFF : tiff.getInt(entry + 8);
+            entries.put(tiff.getShort(entry) & 0xFFFF, value);
+        }
+        return entries;
+    }
+
+    private static int nextIfdOffset(ByteBuffer tiff, int offset) {
+        int count = tiff.getShort(offset) & 0xFFFF;
+        return tiff.getInt(offset + 2 + count * 12);
+    }
+}
@@ -0,0 +1,120 @@
+package com.rncamerademo.nativemodules.camera.utils;
+
+import static com.rncamerademo.nativemodules.camera.utils.ExifSegmentWriter.IFD_COUNT;
+import static com.rncamerademo.nativemodules.camera.utils.ExifSegmentWriter.IFD_GPS;
+import static com.rncamerademo.nativemodules.camera.utils.ExifSegmentWriter.IFD_THUMBNAIL;
+import static com.rncamerademo.nativemodules.camera.utils.ExifSegmentWriter.TAG_EXIF_POINTER;
+import static com.rncamerademo.nativemodules.camera.utils.ExifSegmentWriter.TAG_GPS_POINTER;
+import static com.rncamerademo.nativemodules.camera.utils.ExifSegmentWriter.TAG_INTEROP_POINTER;
+import static com.rncamerademo.nativemodules.camera.utils.ExifSegmentWriter.TAG_STRIP_BYTE_COUNTS;
+import static com.rncamerademo.nativemodules.camera.utils.ExifSegmentWriter.TAG_STRIP_OFFSETS;
+import static com.rncamerademo.nativemodules.camera.utils.ExifSegmentWriter.TAG_THUMBNAIL_LENGTH;
+import static com.rncamerademo.nativemodules.camera.utils.ExifSegmentWriter.TAG_THUMBNAIL_OFFSET;
+import static com.rncamerademo.nativemodules.camera.utils.ExifSegmentWriter.TYPE_RATIONAL;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class ExifTagTest {
+
+    // tags the writer lays out itself; a tag table entry at one of these would let JS corrupt
+    // the segment structure through setAttribute
+    private static final List<Integer> STRUCTURAL_TAGS = Arrays.asList(
+            TAG_EXIF_POINTER, TAG_GPS_POINTER, TAG_INTEROP_POINTER,
+            TAG_STRIP_OFFSETS, TAG_STRIP_BYTE_COUNTS,
+            TAG_THUMBNAIL_OFFSET, TAG_THUMBNAIL_LENGTH);
+
+    @Test
+    public void namesAreUniqueAndLookUpTheirTag() {
+        Set<String> names = new HashSet<>();
+        for (ExifTag tag : ExifTag.values()) {
+            assertTrue("duplicate name " + tag.tagName, names.add(tag.tagName));
+            assertSame(tag, ExifTag.forName(tag.tagName));
+        }
+        assertNull(ExifTag.forName("NotAnExifTag"));
+    }
+
+    @Test
+    public void locationsAreUniqueAndLookUpTheirTag() {
+        for (ExifTag tag : ExifTag.values()) {
+            if (tag.ifd < 0) {
+                continue;
+            }
+            assertTrue(tag.name(), tag.ifd < IFD_COUNT);
+            assertTrue(tag.name(), tag.tiffType > 0);
+            assertSame(tag, ExifTag.forLocation(tag.ifd, tag.id));
+        }
+        assertNull(ExifTag.forLocation(IFD_GPS, 0xFFFF));
+    }
+
+    @Test
+    public void structuralTagsAreNotInTheTable() {
+        for (ExifTag tag : ExifTag.values()) {
+            if (tag.ifd >= 0) {
+                assertFalse(tag.name(), STRUCTURAL_TAGS.contains(tag.id));
+            }
+        }
+        for (int ifd = 0; ifd < IFD_COUNT; ifd++) {
+            for (int id : STRUCTURAL_TAGS) {
+                assertNull(ExifTag.forLocation(ifd, id));
+            }
+        }
+    }
+
+    @Test
+    public void onlyLocatedTagsAreWritable() {
+        Set<ExifTag> readOnly = EnumSet.noneOf(ExifTag.class);
+        for (ExifTag tag : ExifTag.values()) {
+            if (tag.ifd < 0) {
+                assertFalse(tag.name(), tag.writable);
+            } else if (!tag.writable) {
+                readOnly.add(tag);
+            }
+        }
+        // the thumbnail IFD is only carried over, and the DNG tags describe raw data we never write
+        assertEquals(EnumSet.of(ExifTag.THUMBNAIL_IMAGE_LENGTH, ExifTag.THUMBNAIL_IMAGE_WIDTH,
+                ExifTag.DNG_VERSION, ExifTag.DEFAULT_CROP_SIZE), readOnly);
+    }
+
+    @Test
+    public void offsetTagsHaveNoLocation() {
+        for (ExifTag tag : EnumSet.of(ExifTag.JPEG_INTERCHANGE_FORMAT, ExifTag.JPEG_INTERCHANGE_FORMAT_LENGTH,
+                ExifTag.STRIP_OFFSETS, ExifTag.STRIP_BYTE_COUNTS)) {
+            assertEquals(tag.name(), -1, tag.ifd);
+            assertFalse(tag.name(), tag.writable);
+        }
+    }
+
+    @Test
+    public void thumbnailTagsAreReadOnly() {
+        for (ExifTag tag : ExifTag.values()) {
+            if (tag.ifd == IFD_THUMBNAIL) {
+                assertFalse(tag.name(), tag.writable);
+            }
+        }
+    }
+
+    @Test
+    public void coordinatesAreGpsRationals() {
+        // getLatLong() and getAltitude() read these straight from the GPS IFD as rationals
+        for (ExifTag tag : ExifTag.values()) {
+            if (tag.type == ExifTag.Type.COORDINATE) {
+                assertEquals(tag.name(), IFD_GPS, tag.ifd);
+                assertEquals(tag.name(), TYPE_RATIONAL, tag.tiffType);
+            }
+        }
+        assertEquals(ExifTag.Type.COORDINATE, ExifTag.GPS_LATITUDE.type);
+        assertEquals(ExifTag.Type.COORDINATE, ExifTag.GPS_LONGITUDE.type);
+        assertEquals(ExifTag.Type.COORDINATE, ExifTag.GPS_ALTITUDE.type);
+    }
+}
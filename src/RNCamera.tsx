@@ -25,8 +25,22 @@ type PictureOptions = {
   writeExif?: boolean | { [name: string]: any },
   width?: number,
   fixOrientation?: boolean,
+  // 'exif' records rotation and mirroring in the EXIF orientation tag without re-encoding;
+  // 'pixels' rotates and flips the image data itself. Defaults to 'pixels' when fixOrientation
+  // or mirrorImage is set, 'exif' otherwise
+  orientationMode?: 'exif' | 'pixels',
   forceUpOrientation?: boolean,
   pauseAfterCapture?: boolean,
+  // attach per-stage capture timings (ms) to the result
+  includeTimings?: boolean,
+  // how hard to flush the saved file before resolving: 'none' (default), 'data' or 'full'
+  fsync?: 'none' | 'data' | 'full',
+  // reserve the file's full size on disk before writing it
+  preallocate?: boolean,
+  // resolve with { captureId, deviceOrientation, pictureOrientation } as soon as the picture is
+  // taken; the saved picture arrives later through onPictureSaved. Rejects with
+  // E_CAPTURE_BACKPRESSURE while too many are unsaved
+  fastMode?: boolean,
 };
 
 type Point = { x: number, y: number };
@@ -70,6 +84,9 @@ type CameraIds = {
 type CameraViewProps = ViewProps & {
   type: number,
   camerId: string,
+  // keep the camera facing the other way open too, where the device allows both at once, so
+  // switching between them only rebuilds the session
+  fastCameraSwitch?: boolean,
   ratio: string,
   flashMode: number,
   autoFocus: boolean,
@@ -81,10 +98,23 @@ type CameraViewProps = ViewProps & {
   faceDetectionClassifications: number,
   trackingEnabled: boolean,
   textRecognizerEnabled: boolean,
+  faceDetectorMaxFps?: number,
+  barcodeMaxFps?: number,
+  textRecognizerMaxFps?: number,
+  // barcodes seen again within this many ms are not re-sent, 0 disables de-duplication
+  barcodeDedupTtlMs?: number,
+  barcodeDedupMaxSize?: number,
+  // normalized (0-1) rectangle of the preview that barcode and text recognition look at
+  scanAreaOfInterest?: { x: number, y: number, width: number, height: number },
+  // smallest short edge, in pixels, of the frames handed to the detectors. 0 uses the largest preview size
+  scanMinShortEdge?: number,
 	onCameraReady?: ({ nativeEvent }: EventCallbackArgumentsType) => void,
-	onBarCodeRead: (event: barcodeEventData) => void,
-	onFacesDetected: (event: faceDetectionEventData) => void,
+	onBarCodeRead: (event: barcodesReadEventData) => void,
+	onFacesDetected: (event: facesDetectedEventData) => void,
 	onTextRecognized: (event: textRecognizedEventData) => void,
+	onPictureSaved?: (event: pictureSavedEventData) => void,
+	// when set, detection events arriving within this many ms are merged into one callback
+	detectionEventCoalescingMs?: number,
 };
 
 export enum BarcodeFormatsFromEvent {
@@ -132,15 +162,75 @@ type faceDetectionEventData = {
 	height: number,
 };
 
+type barcodesReadEventData = {
+	timestamp: number,
+	barcodes: barcodeEventData[],
+};
+
+type facesDetectedEventData = {
+	timestamp: number,
+	faces: faceDetectionEventData[],
+};
+
 type textRecognizedEventData = {
+	timestamp: number,
 	textDetected: string,
 };
 
+// carries the usual takePictureAsync result on success, or error when processing failed
+type pictureSavedEventData = {
+	captureId: string,
+	uri?: string,
+	error?: { code: string, message: string },
+	[key: string]: any,
+};
+
+type ScanStats = {
+	framesAnalyzed: number,
+	framesDropped: number,
+	faceDetectorLatencyMs: number,
+	barcodeLatencyMs: number,
+	textRecognizerLatencyMs: number,
+	barcodeCacheHits: number,
+	barcodeCacheMisses: number,
+};
+
+type StageStats = {
+	count: number,
+	p50: number,
+	p95: number,
+	p99: number,
+};
+
+// keyed by stage: uiBlock, bgPost, focusLock, precapture, capture, imageAvailable, decode, transform, encode, persist, resolved, total
+type PerformanceStats = { [stage: string]: StageStats };
+
+type CaptureStoreStats = {
+	directory: string,
+	fileCount: number,
+	totalBytes: number,
+	maxBytes: number,
+	maxAgeMs: number,
+	evictedCount: number,
+};
+
+// a limit of 0 leaves it unbounded
+type CaptureStoreOptions = {
+	maxBytes?: number,
+	maxAgeMs?: number,
+};
+
 type CameraModuleProps = {
   takePictureAsync: (options: PictureOptions) => Promise<any>, // refactor any type
   getSupportedRatios: () => Promise<string[]>,
   getCameraIds: () => Promise<CameraIds>,
   hasTorch: () => Promise<boolean>,
+  getScanStats: () => Promise<ScanStats>,
+  getPerformanceStats: () => Promise<PerformanceStats>,
+  getCaptureStoreStats: () => Promise<CaptureStoreStats>,
+  configureCaptureStore: (options: CaptureStoreOptions) => void,
+  purgeCaptureStore: () => Promise<number>,
+  prewarm: (cameraId: string | null) => Promise<string | null>,
 }
 
 export type RecordAudioPermissionStatus = 'AUTHORIZED' | 'NOT_AUTHORIZED' | 'PENDING_AUTHORIZATION';
@@ -186,7 +276,80 @@ export const takePictureAsync = async (options: PictureOptions) => {
 	return await CameraModule.takePictureAsync(options);
 };
 
+// opens the camera (the first back camera by default) ahead of mounting <Camera />; a prewarmed
+// camera the view does not pick up within a few seconds is closed again
+export const prewarm = async (cameraId?: string) => {
+	return await CameraModule.prewarm(cameraId ?? null);
+};
+
+export const getScanStats = async () => {
+	return await CameraModule.getScanStats();
+};
+
+export const getPerformanceStats = async () => {
+	return await CameraModule.getPerformanceStats();
+};
+
+export const getCaptureStoreStats = async () => {
+	return await CameraModule.getCaptureStoreStats();
+};
+
+export const configureCaptureStore = (options: CaptureStoreOptions) => {
+	CameraModule.configureCaptureStore(options);
+};
+
+export const purgeCaptureStore = async () => {
+	return await CameraModule.purgeCaptureStore();
+};
+
 const EventThrottleMs = 500;
+
+type Coalescer<T> = {
+	push: (event: T) => void,
+	cancel: () => void,
+};
+
+// Merges events that arrive within windowMs and delivers the result once the window closes.
+const createCoalescer = <T,>(windowMs: number | undefined, merge: (previous: T, next: T) => T, deliver: (event: T) => void): Coalescer<T> => {
+	if (!windowMs) {
+		return { push: deliver, cancel: () => {} };
+	}
+	let pending: T | undefined;
+	let timer: ReturnType<typeof setTimeout> | undefined;
+	return {
+		push: (event: T) => {
+			pending = pending === undefined ? event : merge(pending, event);
+			if (timer === undefined) {
+				timer = setTimeout(() => {
+					const merged = pending as T;
+					pending = undefined;
+					timer = undefined;
+					deliver(merged);
+				}, windowMs);
+			}
+		},
+		cancel: () => {
+			if (timer !== undefined) {
+				clearTimeout(timer);
+			}
+			pending = undefined;
+			timer = undefined;
+		},
+	};
+};
+
+// keeps every distinct barcode seen during the window, faces and text are state so the latest frame wins
+const mergeBarcodes = (previous: barcodesReadEventData, next: barcodesReadEventData): barcodesReadEventData => {
+	const barcodes = [...previous.barcodes];
+	next.barcodes.forEach(barcode => {
+		if (!barcodes.some(seen => seen.format === barcode.format && seen.rawValue === barcode.rawValue)) {
+			barcodes.push(barcode);
+		}
+	});
+	return { timestamp: next.timestamp, barcodes };
+};
+
+const keepLatest = <T,>(_previous: T, next: T) => next;
 let RNCameraView: HostComponent<unknown> | string;
 
 try {
@@ -205,17 +368,27 @@ const Camera = (props: CameraViewProps) => {
 		let barcodeReadListener: EmitterSubscription;
 		let facesDetectedListener: EmitterSubscription;
 		let textDetectedListener: EmitterSubscription;
+		let pictureSavedListener: EmitterSubscription | undefined;
+		const barcodesRead = createCoalescer(props.detectionEventCoalescingMs, mergeBarcodes, props.onBarCodeRead);
+		const facesDetected = createCoalescer(props.detectionEventCoalescingMs, keepLatest, props.onFacesDetected);
+		const textRecognized = createCoalescer(props.detectionEventCoalescingMs, keepLatest, props.onTextRecognized);
 		if (props.barcodeReaderEnabled) {
-			barcodeReadListener = DeviceEventEmitter.addListener('onBarCodeRead', props.onBarCodeRead);
+			barcodeReadListener = DeviceEventEmitter.addListener('onBarCodeRead', barcodesRead.push);
 		}
 		if (props.faceDetectorEnabled) {
-			facesDetectedListener = DeviceEventEmitter.addListener('onFacesDetected', props.onFacesDetected);
+			facesDetectedListener = DeviceEventEmitter.addListener('onFacesDetected', facesDetected.push);
 		}
 		if (props.textRecognizerEnabled) {
-			textDetectedListener = DeviceEventEmitter.addListener('onTextRecognized', props.onTextRecognized);
+			textDetectedListener = DeviceEventEmitter.addListener('onTextRecognized', textRecognized.push);
+		}
+		if (props.onPictureSaved) {
+			pictureSavedListener = DeviceEventEmitter.addListener('onPictureSaved', props.onPictureSaved);
 		}
 		
 		return () => {
+			barcodesRead.cancel();
+			facesDetected.cancel();
+			textRecognized.cancel();
 			if (props.barcodeReaderEnabled) {
 				barcodeReadListener.remove();
 			}
@@ -225,6 +398,7 @@ const Camera = (props: CameraViewProps) => {
 			if (props.textRecognizerEnabled) {
 				textDetectedListener.remove();
 			}
+			pictureSavedListener?.remove();
 		}
 	}, []);
 	